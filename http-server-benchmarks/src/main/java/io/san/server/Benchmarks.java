@@ -0,0 +1,45 @@
+package io.san.server;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * benchmarks.jar 的入口, 参数与 JMH 命令行相同; 没有指定 -prof 时带上 GC profiler(-prof gc),
+ * 结果中的 gc.alloc.rate.norm 为每次操作分配的字节数。
+ * <pre>
+ * java -jar benchmarks.jar                        全部
+ * java -jar benchmarks.jar Router -p routes=1000  只跑路由查找
+ * java -Dnogc=true -jar benchmarks.jar ...        不带 GC profiler
+ * </pre>
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (!Boolean.getBoolean("nogc") && commandLine.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
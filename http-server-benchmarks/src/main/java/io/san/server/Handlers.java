@@ -0,0 +1,80 @@
+package io.san.server;
+
+import com.google.common.base.Strings;
+import io.san.DefaultDispatcher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试和压测共用的路由
+ */
+public final class Handlers {
+
+    private static final Map<Integer, String> payloads = new ConcurrentHashMap<>();
+
+    private Handlers() {
+    }
+
+    /**
+     * 与业务进程一样由 Spring 扫描 {@link RestApi} 注册路由
+     */
+    public static DefaultDispatcher dispatcher() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(DefaultDispatcher.class,
+                Hello.class, GetOrder.class, EchoOrder.class, Payload.class, UploadPayload.class);
+        return context.getBean(DefaultDispatcher.class);
+    }
+
+    @RestApi(path = "/hello")
+    public static class Hello implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            return "hello world";
+        }
+    }
+
+    @RestApi(path = "/orders/{id}")
+    public static class GetOrder implements MappingHandler<Order> {
+        @Override
+        public Order handle(NettyHttpRequest request) {
+            return Order.sample(request.getLongPathValue("id"));
+        }
+    }
+
+    @RestApi(path = "/orders", method = "POST")
+    public static class EchoOrder implements TypedMappingHandler<Order, Order> {
+        @Override
+        public Order handle(NettyHttpRequest request, Order body) {
+            return body;
+        }
+    }
+
+    /**
+     * GET /payload?size=n: 返回 n 个字符的 JSON 字符串(body 为 n + 2 字节)
+     */
+    @RestApi(path = "/payload")
+    public static class Payload implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            return payload(request);
+        }
+    }
+
+    /**
+     * POST /payload?size=n: 请求 body 为 JSON 字符串, 响应同 GET
+     */
+    @RestApi(path = "/payload", method = "POST")
+    public static class UploadPayload implements TypedMappingHandler<String, String> {
+        @Override
+        public String handle(NettyHttpRequest request, String body) {
+            return payload(request);
+        }
+    }
+
+    private static String payload(NettyHttpRequest request) {
+        String size = request.getQueryValue("size");
+        return payloads.computeIfAbsent(Objects.isNull(size) ? 0 : Integer.parseInt(size), n -> Strings.repeat("x", n));
+    }
+}
@@ -0,0 +1,114 @@
+package io.san.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应 entity 的 JSON 编码和请求 body 的解码。
+ * <ul>
+ * <li>legacyToJson / legacyToObject: 原 JsonUtils 的配置(SimpleDateFormat, 反射读写属性), 作为基线</li>
+ * <li>toJson / toObject: 现在的 JsonUtils</li>
+ * <li>writeTo / typedWriteTo: 直接写入 ByteBuf, 后者使用路由按返回类型预先构建的 writer</li>
+ * <li>readBody: TypedMappingHandler 的路径, 用路由预先构建的 reader 从字节解码</li>
+ * </ul>
+ * 多线程运行(-t)可以看出 DateFormat clone 的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class JsonBenchmark {
+    private static final ObjectMapper legacyMapper = new ObjectMapper();
+
+    static {
+        legacyMapper.setTimeZone(TimeZone.getDefault());
+        legacyMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"));
+    }
+
+    private Order order;
+    private ObjectWriter typedWriter;
+    private ByteBuf buffer;
+    private ObjectReader reader;
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        this.order = Order.sample();
+        this.typedWriter = JsonUtils.writerFor(Order.class);
+        this.buffer = Unpooled.buffer(4096);
+        this.reader = JsonUtils.readerFor(Order.class);
+        this.json = JsonUtils.toJson(this.order);
+        this.bytes = this.json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.buffer.release();
+    }
+
+    @Benchmark
+    public String legacyToJson() throws JsonProcessingException {
+        return legacyMapper.writeValueAsString(this.order);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonUtils.toJson(this.order);
+    }
+
+    @Benchmark
+    public int writeTo() {
+        this.buffer.clear();
+        JsonUtils.writeTo(this.buffer, this.order);
+        return this.buffer.writerIndex();
+    }
+
+    @Benchmark
+    public int typedWriteTo() {
+        this.buffer.clear();
+        JsonUtils.writeTo(this.buffer, this.typedWriter, this.order);
+        return this.buffer.writerIndex();
+    }
+
+    @Benchmark
+    public Order legacyToObject() throws IOException {
+        return legacyMapper.readValue(this.json, Order.class);
+    }
+
+    @Benchmark
+    public Order toObject() throws IOException {
+        return JsonUtils.toObject(this.json, Order.class);
+    }
+
+    @Benchmark
+    public Order readBody() throws IOException {
+        return this.reader.readValue(this.bytes);
+    }
+}
@@ -0,0 +1,490 @@
+package io.san.server;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内压测: 启动 HttpServer(路由见 {@link Handlers}), 用 Netty 客户端经 loopback 发请求,
+ * 统计吞吐和延迟分布, 用于在同一台机器上比较 ioNum / maxRequest / keepaliveTime 等配置。
+ * <p>
+ * 闭环模型: 每个连接最多 pipelining 个在途请求, 收到响应才发下一个。指定 --rate 时按固定间隔安排
+ * 每个请求的预定发送时间, 延迟从预定时间算起, 服务端变慢导致的发送推迟也计入延迟(coordinated omission 修正);
+ * 不限速时用平均延迟作为期望间隔, 由 HdrHistogram 补齐被推迟的样本。两种情况都同时给出未修正的分布。
+ * <p>
+ * 客户端和服务端共用 CPU, 结果用于同一台机器上不同配置之间的比较, 不代表独立压测机的绝对值。
+ * <pre>
+ * java -cp benchmarks.jar io.san.server.LoadGenerator -c 64 -p 4 --response-size 1024 --io 4
+ * </pre>
+ */
+public final class LoadGenerator {
+    /**
+     * 连接断开后重连前的等待时间
+     */
+    private static final long RECONNECT_DELAY_MILLIS = 10;
+    /**
+     * 测试结束后等待在途请求返回的时间
+     */
+    private static final long DRAIN_MILLIS = 2000;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int pipelining;
+    private final boolean keepalive;
+    private final long intervalNanos;
+    private final int requestSize;
+    private final int responseSize;
+    private final ByteBuf request;
+    private final List<Connection> clients = new ArrayList<>();
+    private CountDownLatch finished;
+    private long measureStart;
+    private long measureEnd;
+
+    private LoadGenerator(CommandLine cli, int port) {
+        this.host = "127.0.0.1";
+        this.port = port;
+        this.connections = intValue(cli, "connections", 16);
+        this.keepalive = !cli.hasOption("no-keepalive");
+        // 短连接每个连接只发一个请求
+        this.pipelining = this.keepalive ? intValue(cli, "pipelining", 1) : 1;
+        long rate = Long.parseLong(cli.getOptionValue("rate", "0"));
+        this.intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(this.connections) / rate : 0;
+        this.requestSize = intValue(cli, "request-size", 0);
+        this.responseSize = intValue(cli, "response-size", 64);
+        this.request = encodeRequest();
+    }
+
+    public static void main(String[] args) throws InterruptedException, FileNotFoundException {
+        Options options = options();
+        CommandLine cli;
+        try {
+            cli = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("LoadGenerator", options);
+            return;
+        }
+        if (cli.hasOption("help")) {
+            new HelpFormatter().printHelp("LoadGenerator", options);
+            return;
+        }
+
+        int port = intValue(cli, "port", 18080);
+        HttpServer server = server(cli, port);
+        server.start();
+        try {
+            LoadGenerator generator = new LoadGenerator(cli, port);
+            generator.run(intValue(cli, "threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                    intValue(cli, "warmup", 3), intValue(cli, "duration", 10), cli.getOptionValue("hgrm"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static HttpServer server(CommandLine cli, int port) {
+        HttpServer.Builder builder = HttpServer.builder()
+                .dispatcher(Handlers.dispatcher())
+                .port(port);
+        if (cli.hasOption("io")) {
+            builder.ioNum(intValue(cli, "io", 0));
+        }
+        if (cli.hasOption("max-request")) {
+            builder.maxRequest(intValue(cli, "max-request", 0));
+        }
+        if (cli.hasOption("rcvbuf")) {
+            builder.rcvBuf(intValue(cli, "rcvbuf", 0));
+        }
+        if (cli.hasOption("sndbuf")) {
+            builder.sndBuf(intValue(cli, "sndbuf", 0));
+        }
+        if (cli.hasOption("keepalive-time")) {
+            builder.keepaliveTime(intValue(cli, "keepalive-time", 0));
+        }
+        if (cli.hasOption("server-pipelining")) {
+            builder.pipeliningDepth(intValue(cli, "server-pipelining", 0));
+        }
+        if (cli.hasOption("mode")) {
+            builder.executionMode(ExecutionMode.valueOf(cli.getOptionValue("mode").toUpperCase()));
+        }
+        return builder.build();
+    }
+
+    private void run(int threads, int warmupSeconds, int durationSeconds, String hgrm)
+            throws InterruptedException, FileNotFoundException {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("load-%d").setDaemon(true).build();
+        boolean epoll = Epoll.isAvailable();
+        EventLoopGroup group = epoll ? new EpollEventLoopGroup(threads, threadFactory)
+                : new NioEventLoopGroup(threads, threadFactory);
+        Bootstrap bootstrap = new Bootstrap()
+                .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .remoteAddress(this.host, this.port);
+
+        System.out.printf("%ds (warmup %ds) against http://%s:%d%s%n", durationSeconds, warmupSeconds,
+                this.host, this.port, path());
+        System.out.printf("  %d connections, pipelining %d, keep-alive %s, request %d B, response %d B, rate %s%n",
+                this.connections, this.pipelining, this.keepalive ? "on" : "off", this.requestSize,
+                this.responseSize, this.intervalNanos > 0
+                        ? String.valueOf(TimeUnit.SECONDS.toNanos(this.connections) / this.intervalNanos) + "/s"
+                        : "unlimited");
+
+        long start = System.nanoTime();
+        this.measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.measureEnd = this.measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.finished = new CountDownLatch(this.connections);
+        for (int i = 0; i < this.connections; i++) {
+            EventLoop loop = group.next();
+            // 每个连接固定在一个 event loop 上, 重连后状态仍只在该线程上访问
+            Connection connection = new Connection(bootstrap.clone(loop), loop);
+            this.clients.add(connection);
+            loop.execute(connection::connect);
+            loop.schedule(connection::stop, this.measureEnd - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        this.finished.await(warmupSeconds + durationSeconds + TimeUnit.MILLISECONDS.toSeconds(DRAIN_MILLIS) + 10,
+                TimeUnit.SECONDS);
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        this.request.release();
+        report(durationSeconds, hgrm);
+    }
+
+    private void report(int durationSeconds, String hgrm) throws FileNotFoundException {
+        Histogram latency = new Histogram(3);
+        Histogram uncorrected = new Histogram(3);
+        long completed = 0;
+        long errors = 0;
+        long reconnects = 0;
+        for (Connection connection : this.clients) {
+            latency.add(connection.latency);
+            uncorrected.add(connection.uncorrected);
+            completed += connection.completed;
+            errors += connection.errors;
+            reconnects += connection.reconnects;
+        }
+        if (this.intervalNanos == 0 && uncorrected.getTotalCount() > 0) {
+            // 闭环不限速时每个在途槽位的期望间隔近似为平均延迟
+            latency = uncorrected.copyCorrectedForCoordinatedOmission((long) uncorrected.getMean());
+        }
+
+        System.out.printf("%n  requests %d, errors %d, reconnects %d%n", completed, errors, reconnects);
+        System.out.printf("  throughput %.1f req/s%n", completed / (double) durationSeconds);
+        System.out.printf("  %-14s%10s%10s%10s%10s%10s%10s%n", "latency (us)", "p50", "p90", "p99", "p999", "max", "mean");
+        printLatency("corrected", latency);
+        printLatency("uncorrected", uncorrected);
+        if (Objects.nonNull(hgrm)) {
+            try (PrintStream out = new PrintStream(hgrm)) {
+                latency.outputPercentileDistribution(out, 1000.0);
+            }
+            System.out.printf("  corrected distribution written to %s%n", hgrm);
+        }
+    }
+
+    private static void printLatency(String name, Histogram histogram) {
+        System.out.printf("  %-14s%10.1f%10.1f%10.1f%10.1f%10.1f%10.1f%n", name,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0,
+                histogram.getMean() / 1000.0);
+    }
+
+    private String path() {
+        return "/payload?size=" + this.responseSize;
+    }
+
+    /**
+     * 所有请求相同, 预先编码好, 发送时只做 retainedDuplicate
+     */
+    private ByteBuf encodeRequest() {
+        StringBuilder head = new StringBuilder();
+        String body = null;
+        if (this.requestSize > 0) {
+            body = '"' + Strings.repeat("x", Math.max(0, this.requestSize - 2)) + '"';
+            head.append("POST ");
+        } else {
+            head.append("GET ");
+        }
+        head.append(path()).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(this.host).append(':').append(this.port).append("\r\n")
+                .append("Connection: ").append(this.keepalive ? "keep-alive" : "close").append("\r\n");
+        if (Objects.nonNull(body)) {
+            head.append("Content-Type: application/json\r\n")
+                    .append("Content-Length: ").append(body.length()).append("\r\n");
+        }
+        head.append("\r\n");
+        if (Objects.nonNull(body)) {
+            head.append(body);
+        }
+        byte[] bytes = head.toString().getBytes(CharsetUtil.US_ASCII);
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes));
+    }
+
+    private static Options options() {
+        Options options = new Options();
+        options.addOption(Option.builder("c").longOpt("connections").hasArg().desc("连接数, 默认 16").build());
+        options.addOption(Option.builder("p").longOpt("pipelining").hasArg().desc("每个连接的在途请求数, 默认 1").build());
+        options.addOption(Option.builder().longOpt("no-keepalive").desc("短连接, 每个请求新建连接").build());
+        options.addOption(Option.builder("r").longOpt("rate").hasArg().desc("总请求速率(req/s), 默认不限速").build());
+        options.addOption(Option.builder().longOpt("request-size").hasArg()
+                .desc("请求 body 字节数, 大于 0 时发 POST, 默认 0").build());
+        options.addOption(Option.builder().longOpt("response-size").hasArg().desc("响应 body 字符数, 默认 64").build());
+        options.addOption(Option.builder("d").longOpt("duration").hasArg().desc("统计时长(秒), 默认 10").build());
+        options.addOption(Option.builder("w").longOpt("warmup").hasArg().desc("预热时长(秒), 不计入结果, 默认 3").build());
+        options.addOption(Option.builder("t").longOpt("threads").hasArg().desc("客户端 IO 线程数, 默认 CPU 数 / 2").build());
+        options.addOption(Option.builder().longOpt("hgrm").hasArg()
+                .desc("修正后的延迟分布(微秒)写入该文件, 可用 HdrHistogram 的 plotter 作图").build());
+        options.addOption(Option.builder().longOpt("port").hasArg().desc("server 端口, 默认 18080").build());
+        options.addOption(Option.builder().longOpt("io").hasArg().desc("server ioNum").build());
+        options.addOption(Option.builder().longOpt("max-request").hasArg().desc("server maxRequest").build());
+        options.addOption(Option.builder().longOpt("rcvbuf").hasArg()
+                .desc("server SO_RCVBUF, 默认 0 由内核自动调整; 设置较小的值时, 大于它的请求会受接收窗口限制").build());
+        options.addOption(Option.builder().longOpt("sndbuf").hasArg().desc("server SO_SNDBUF, 默认 0 由内核自动调整").build());
+        options.addOption(Option.builder().longOpt("keepalive-time").hasArg().desc("server keepaliveTime(毫秒)").build());
+        options.addOption(Option.builder().longOpt("server-pipelining").hasArg().desc("server pipeliningDepth").build());
+        options.addOption(Option.builder().longOpt("mode").hasArg().desc("server executionMode: INLINE / POOL / VIRTUAL").build());
+        options.addOption(Option.builder("h").longOpt("help").build());
+        return options;
+    }
+
+    private static int intValue(CommandLine cli, String name, int defaultValue) {
+        return cli.hasOption(name) ? Integer.parseInt(cli.getOptionValue(name)) : defaultValue;
+    }
+
+    /**
+     * 一个客户端连接, 所有状态只在绑定的 event loop 上访问; 断开后在同一个 event loop 上重连,
+     * 未收到响应的请求保留预定发送时间, 在新连接上重发。
+     */
+    @ChannelHandler.Sharable
+    private final class Connection extends SimpleChannelInboundHandler<HttpObject> {
+        private final Bootstrap bootstrap;
+        private final EventLoop loop;
+        final Histogram latency = new Histogram(3);
+        final Histogram uncorrected = new Histogram(3);
+        long completed;
+        long errors;
+        long reconnects;
+        /**
+         * 在途请求的预定发送时间和实际发送时间, 环形队列
+         */
+        private final long[] intended;
+        private final long[] sent;
+        private int head;
+        private int inFlight;
+        private long nextIntended;
+        private boolean fillScheduled;
+        /**
+         * 首次连上后才开始按速率安排请求, 建连的耗时不算作落后于计划
+         */
+        private boolean scheduling;
+        private boolean running = true;
+        private boolean done;
+        /**
+         * 当前响应的状态码 >= 400
+         */
+        private boolean failed;
+        /**
+         * 服务端要求关闭连接(短连接或达到 maxRequest)
+         */
+        private boolean closing;
+        private Channel channel;
+
+        private Connection(Bootstrap bootstrap, EventLoop loop) {
+            this.bootstrap = bootstrap.handler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    ch.pipeline().addLast(new HttpResponseDecoder(), Connection.this);
+                }
+            });
+            this.loop = loop;
+            this.intended = new long[pipelining];
+            this.sent = new long[pipelining];
+        }
+
+        void connect() {
+            if (!this.running) {
+                finish();
+                return;
+            }
+            this.bootstrap.connect().addListener((ChannelFuture future) -> {
+                if (!future.isSuccess()) {
+                    this.errors++;
+                    if (this.running) {
+                        this.loop.schedule(this::connect, RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                    } else {
+                        finish();
+                    }
+                    return;
+                }
+                this.channel = future.channel();
+                this.channel.closeFuture().addListener(closed -> closed());
+                if (!this.running) {
+                    this.channel.close();
+                    return;
+                }
+                if (!this.scheduling) {
+                    this.scheduling = true;
+                    this.nextIntended = System.nanoTime();
+                }
+                resend();
+                fill();
+            });
+        }
+
+        /**
+         * 新连接上先重发上一个连接未完成的请求, 发送时间更新, 预定时间不变
+         */
+        private void resend() {
+            long now = System.nanoTime();
+            for (int i = 0; i < this.inFlight; i++) {
+                this.sent[(this.head + i) % this.sent.length] = now;
+                this.channel.write(request.retainedDuplicate());
+            }
+        }
+
+        private void fill() {
+            this.fillScheduled = false;
+            if (!this.running || this.closing || !this.channel.isActive()) {
+                return;
+            }
+            while (this.inFlight < pipelining) {
+                long now = System.nanoTime();
+                long scheduled = now;
+                if (intervalNanos > 0) {
+                    if (this.nextIntended > now) {
+                        this.fillScheduled = true;
+                        this.loop.schedule(this::fill, this.nextIntended - now, TimeUnit.NANOSECONDS);
+                        break;
+                    }
+                    // 落后于计划时立即发送, 延迟仍从预定时间算起
+                    scheduled = this.nextIntended;
+                    this.nextIntended += intervalNanos;
+                }
+                int tail = (this.head + this.inFlight) % this.intended.length;
+                this.intended[tail] = scheduled;
+                this.sent[tail] = now;
+                this.inFlight++;
+                this.channel.write(request.retainedDuplicate());
+            }
+            this.channel.flush();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) {
+            if (msg instanceof HttpResponse) {
+                HttpResponse response = (HttpResponse) msg;
+                this.failed = response.status().code() >= 400;
+                this.closing |= !HttpUtil.isKeepAlive(response);
+            }
+            if (msg instanceof LastHttpContent) {
+                responded();
+            }
+        }
+
+        private void responded() {
+            if (this.inFlight == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long scheduled = this.intended[this.head];
+            long sentAt = this.sent[this.head];
+            this.head = (this.head + 1) % this.intended.length;
+            this.inFlight--;
+            if (now >= measureStart && now < measureEnd) {
+                this.latency.recordValue(now - scheduled);
+                this.uncorrected.recordValue(now - sentAt);
+                this.completed++;
+                if (this.failed) {
+                    this.errors++;
+                }
+            }
+            if (this.closing || !this.running && this.inFlight == 0) {
+                // 后面已发出的请求在新连接上重发
+                this.channel.close();
+                return;
+            }
+            if (!this.fillScheduled) {
+                fill();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            this.errors++;
+            ctx.close();
+        }
+
+        private void closed() {
+            this.closing = false;
+            this.fillScheduled = false;
+            if (!this.running) {
+                finish();
+                return;
+            }
+            this.reconnects++;
+            this.loop.schedule(this::connect, keepalive ? RECONNECT_DELAY_MILLIS : 0, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 统计结束, 不再发送新请求, 等待在途请求返回后关闭
+         */
+        void stop() {
+            this.running = false;
+            Channel current = this.channel;
+            if (Objects.isNull(current) || !current.isActive()) {
+                // 正在连接或等待重连, 由 connect 结束
+                return;
+            }
+            if (this.inFlight == 0) {
+                current.close();
+            } else {
+                this.loop.schedule(() -> current.close(), DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void finish() {
+            if (!this.done) {
+                this.done = true;
+                finished.countDown();
+            }
+        }
+    }
+}
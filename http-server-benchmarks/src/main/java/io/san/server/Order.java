@@ -0,0 +1,49 @@
+package io.san.server;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 基准测试使用的响应/请求 body, 编码后约 600 字节
+ */
+public final class Order {
+    public long id;
+    public String customer;
+    public Date createdAt;
+    public Date paidAt;
+    public int status;
+    public double amount;
+    public List<Item> items;
+
+    static Order sample() {
+        return sample(10086L);
+    }
+
+    static Order sample(long id) {
+        Order order = new Order();
+        order.id = id;
+        order.customer = "san";
+        order.createdAt = new Date(1700000000000L);
+        order.paidAt = new Date(order.createdAt.getTime() + 1000);
+        order.status = 2;
+        order.amount = 398.5;
+        order.items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Item item = new Item();
+            item.sku = "sku-" + i;
+            item.quantity = i + 1;
+            item.price = 19.9 * (i + 1);
+            item.updatedAt = new Date(order.createdAt.getTime() - i * 60_000L);
+            order.items.add(item);
+        }
+        return order;
+    }
+
+    public static final class Item {
+        public String sku;
+        public int quantity;
+        public double price;
+        public Date updatedAt;
+    }
+}
@@ -0,0 +1,114 @@
+package io.san.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个请求经过完整 pipeline 的开销: HttpServerCodec 解析、聚合、HttpServerHandler.channelRead0、
+ * DefaultDispatcher 匹配和执行 handler、NettyHttpResponse.make 编码 body、按序写出和 HTTP 编码。
+ * <p>
+ * 使用 EmbeddedChannel, 不经过网络和 event loop 线程切换; INLINE 模式, 同一个 keep-alive 连接上依次发送请求。
+ * 返回值为响应的字节数, 用于确认每次都拿到了完整响应。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private EmbeddedChannel channel;
+    private ByteBuf getText;
+    private ByteBuf getJson;
+    private ByteBuf postJson;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HttpServer server = HttpServer.builder()
+                .dispatcher(Handlers.dispatcher())
+                .executionMode(ExecutionMode.INLINE)
+                .maxRequest(Integer.MAX_VALUE)
+                .keepaliveTime(Integer.MAX_VALUE)
+                .idleTime(0)
+                .build();
+        server.prepare();
+        this.channel = new EmbeddedChannel();
+        this.channel.attr(ChannelKey.CONNECT_SESSION).set(server.newSession());
+        server.initChannel(this.channel);
+
+        this.getText = request("GET /hello HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n");
+        this.getJson = request("GET /orders/10086 HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Accept: application/json\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n");
+        String body = JsonUtils.toJson(Order.sample());
+        this.postJson = request("POST /orders HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.getBytes(CharsetUtil.UTF_8).length + "\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n" + body);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.channel.finishAndReleaseAll();
+        this.getText.release();
+        this.getJson.release();
+        this.postJson.release();
+    }
+
+    @Benchmark
+    public int getText() {
+        return exchange(this.getText);
+    }
+
+    @Benchmark
+    public int getJson() {
+        return exchange(this.getJson);
+    }
+
+    @Benchmark
+    public int postJson() {
+        return exchange(this.postJson);
+    }
+
+    private int exchange(ByteBuf request) {
+        this.channel.writeInbound(request.retainedDuplicate());
+        int bytes = 0;
+        ByteBuf response;
+        while ((response = this.channel.readOutbound()) != null) {
+            bytes += response.readableBytes();
+            response.release();
+        }
+        if (bytes == 0) {
+            throw new IllegalStateException("No response");
+        }
+        return bytes;
+    }
+
+    private static ByteBuf request(String text) {
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer().writeBytes(text.getBytes(CharsetUtil.UTF_8)));
+    }
+}
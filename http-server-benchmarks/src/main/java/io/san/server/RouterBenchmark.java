@@ -0,0 +1,130 @@
+package io.san.server;
+
+import io.san.server.exception.IllegalMethodNotAllowedException;
+import io.san.server.exception.IllegalPathDuplicatedException;
+import io.san.server.exception.IllegalPathNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DefaultDispatcher 匹配路由的开销, 即 {@link Router#match}。
+ * 路由表按 routes 数量生成, 一半是静态路径, 一半带路径变量; 查找的路径落在路由表中间,
+ * 分别测静态命中、变量命中和 404。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int routes;
+
+    private Router router;
+    private String staticUri;
+    private String variableUri;
+    private String missingUri;
+
+    @Setup
+    public void setup() throws IllegalPathDuplicatedException {
+        this.router = new Router();
+        MappingHandler<String> handler = request -> "ok";
+        for (int i = 0; i < this.routes; i++) {
+            String path = i % 2 == 0 ? "/api/v1/resource" + i + "/list" : "/api/v1/resource" + i + "/{id}/detail";
+            this.router.add(new Route(new Api(path, "GET"), handler));
+        }
+        this.router.compile();
+        int middle = this.routes / 2;
+        this.staticUri = "/api/v1/resource" + (middle - middle % 2) + "/list?page=1";
+        this.variableUri = "/api/v1/resource" + (middle | 1) + "/10086/detail";
+        this.missingUri = "/api/v1/resource" + this.routes + "/list";
+    }
+
+    @Benchmark
+    public Route matchStatic() throws IllegalPathNotFoundException, IllegalMethodNotAllowedException {
+        return this.router.match("GET", this.staticUri);
+    }
+
+    @Benchmark
+    public Route matchVariable() throws IllegalPathNotFoundException, IllegalMethodNotAllowedException {
+        return this.router.match("GET", this.variableUri);
+    }
+
+    @Benchmark
+    public Route notFound() {
+        return this.router.find("GET", this.missingUri);
+    }
+
+    /**
+     * 运行时生成的 {@link RestApi}
+     */
+    @SuppressWarnings("ClassExplicitlyAnnotation")
+    private static final class Api implements RestApi {
+        private final String path;
+        private final String method;
+
+        private Api(String path, String method) {
+            this.path = path;
+            this.method = method;
+        }
+
+        @Override
+        public String path() {
+            return path;
+        }
+
+        @Override
+        public String method() {
+            return method;
+        }
+
+        @Override
+        public boolean equal() {
+            return true;
+        }
+
+        @Override
+        public String executor() {
+            return "";
+        }
+
+        @Override
+        public boolean precompress() {
+            return false;
+        }
+
+        @Override
+        public int cacheSeconds() {
+            return 0;
+        }
+
+        @Override
+        public String[] cacheHeaders() {
+            return new String[0];
+        }
+
+        @Override
+        public long cacheMaxBytes() {
+            return 0;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return RestApi.class;
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package io.san;
 
+import io.netty.handler.codec.http.HttpMethod;
 import io.san.server.*;
 import io.san.server.exception.IllegalMethodNotAllowedException;
 import io.san.server.exception.IllegalPathDuplicatedException;
 import io.san.server.exception.IllegalPathNotFoundException;
+import io.san.server.exception.IllegalRequestBodyException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
 
@@ -20,37 +22,59 @@ public class DefaultDispatcher extends AbstractDispatcher implements Application
     @Override
     protected void handle(NettyHttpRequest request, HttpResp resp)
             throws IllegalMethodNotAllowedException,
-            IllegalPathNotFoundException {
+            IllegalPathNotFoundException,
+            IllegalRequestBodyException {
         MappingHandler handler = null;
         handler = matchMappingHandler(request);
-        Response response = handler.request(request);
-        resp.ok(response.toJSONString());
+        Response response;
+        if (handler instanceof TypedMappingHandler) {
+            // body 在调用 handler 之前解析, 解析失败返回 400
+            response = ((TypedMappingHandler) handler).request(request, request.readBody());
+        } else {
+            response = handler.request(request);
+        }
+        Object data = response.getData();
+        if (data instanceof FileResponse) {
+            resp.file((FileResponse) data);
+        } else if (data instanceof StreamResponse) {
+            resp.stream((StreamResponse) data);
+        } else {
+            resp.entity(data);
+        }
     }
 
 
-    private HashMap<Path, MappingHandler> mappingHandlers = new HashMap<>();
+    private final Router router = new Router();
 
 
     private MappingHandler matchMappingHandler(NettyHttpRequest request) throws IllegalPathNotFoundException,
             IllegalMethodNotAllowedException {
-        String uri = request.uri().toLowerCase();
-        Map.Entry<Path, MappingHandler> targetPath = null;
-
-        for (Map.Entry<Path, MappingHandler> pathEntry : mappingHandlers.entrySet()) {
-            Path path = pathEntry.getKey();
-            if (path.isEqual() ? Objects.equals(path.getUri(), uri) : uri.startsWith(path.getUri())) {
-                targetPath = pathEntry;
-                break;
-            }
+        Route route = request.route();
+        if (Objects.isNull(route)) {
+            route = router.match(request.method().name(), request.uri());
+            request.route(route);
         }
+        return route.getHandler();
+    }
 
-        if (Objects.isNull(targetPath)) throw new IllegalPathNotFoundException();
-
-        if (!targetPath.getKey().getMethod().equalsIgnoreCase(request.method().name())) {
-            throw new IllegalMethodNotAllowedException();
+    @Override
+    protected Route route(NettyHttpRequest request) {
+        Route route = request.route();
+        if (Objects.isNull(route)) {
+            route = route(request.method(), request.uri());
+            request.route(route);
         }
+        return route;
+    }
+
+    @Override
+    protected Route route(HttpMethod method, String uri) {
+        return router.find(method.name(), uri);
+    }
 
-        return targetPath.getValue();
+    @Override
+    protected Collection<Route> routes() {
+        return router.routes();
     }
 
     @Override
@@ -58,15 +82,17 @@ public class DefaultDispatcher extends AbstractDispatcher implements Application
         Map<String, Object> handlers = applicationContext.getBeansWithAnnotation(RestApi.class);
         for (Map.Entry<String, Object> entry : handlers.entrySet()) {
             Object handler = entry.getValue();
-            Path path = Path.make(handler.getClass().getAnnotation(RestApi.class));
-            if (mappingHandlers.containsKey(path)) {
-                log.error("Mapping has duplicated : {}", path.toString(), new IllegalPathDuplicatedException());
+            Route route = new Route(handler.getClass().getAnnotation(RestApi.class), (MappingHandler) handler);
+            try {
+                router.add(route);
+            } catch (IllegalPathDuplicatedException e) {
+                log.error("Mapping has duplicated : {}", route, e);
                 System.exit(0);
             }
 
-            log.info("mapping:[{}]", path);
-            mappingHandlers.put(path, (MappingHandler) handler);
+            log.info("mapping:[{}]", route);
         }
+        router.compile();
 
     }
 }
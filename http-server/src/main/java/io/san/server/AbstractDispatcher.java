@@ -1,24 +1,46 @@
 package io.san.server;
 
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.san.server.exception.IllegalMethodNotAllowedException;
 import io.san.server.exception.IllegalPathNotFoundException;
+import io.san.server.exception.IllegalRequestBodyException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
 
 public abstract class AbstractDispatcher {
 
 
-    FullHttpResponse handleRequest(NettyHttpRequest fullRequest) {
-        NettyHttpRequest request = new NettyHttpRequest(fullRequest);
+    FullHttpResponse handleRequest(NettyHttpRequest request) {
         HttpResp resp = new HttpResp();
+        resp.codec = request.responseCodec();
         FullHttpResponse response = null;
         try {
             handle(request, resp);
-            response = NettyHttpResponse.make(resp);
+            if (Objects.nonNull(resp.file)) {
+                response = resp.file.toResponse(request);
+            } else if (Objects.nonNull(resp.stream)) {
+                response = resp.stream.toResponse();
+            } else {
+                Route route = request.route();
+                if (resp.encodeEntity && Objects.nonNull(route)) {
+                    resp.writer = route.getEntityWriter(resp.codec, resp.entity);
+                }
+                response = NettyHttpResponse.make(resp, request.alloc());
+                if (resp.encodeEntity && request.codecs.isNegotiable()) {
+                    response.headers().add(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT);
+                }
+            }
         } catch (IllegalMethodNotAllowedException error) {
             response = NettyHttpResponse.make(HttpResponseStatus.METHOD_NOT_ALLOWED);
         } catch (IllegalPathNotFoundException error) {
             response = NettyHttpResponse.make(HttpResponseStatus.NOT_FOUND);
+        } catch (IllegalRequestBodyException error) {
+            response = NettyHttpResponse.make(HttpResponseStatus.BAD_REQUEST);
         } catch (Exception e) {
             response = NettyHttpResponse.makeError(e);
         }
@@ -26,5 +48,27 @@ public abstract class AbstractDispatcher {
     }
 
 
-    protected abstract void handle(NettyHttpRequest request, HttpResp resp) throws IllegalMethodNotAllowedException, IllegalPathNotFoundException;
+    protected abstract void handle(NettyHttpRequest request, HttpResp resp) throws IllegalMethodNotAllowedException,
+            IllegalPathNotFoundException, IllegalRequestBodyException;
+
+    /**
+     * 在 IO 线程上预先匹配路由, 用于选择执行线程池; 未命中或不支持时返回 null
+     */
+    protected Route route(NettyHttpRequest request) {
+        return null;
+    }
+
+    /**
+     * 按请求行匹配路由, 用于还没有创建请求对象的场景(流式上传判断请求头); 未命中或不支持时返回 null
+     */
+    protected Route route(HttpMethod method, String uri) {
+        return null;
+    }
+
+    /**
+     * 所有已注册的路由, server 启动时用于校验路由配置
+     */
+    protected Collection<Route> routes() {
+        return Collections.emptyList();
+    }
 }
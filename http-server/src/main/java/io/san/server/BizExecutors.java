@@ -0,0 +1,113 @@
+package io.san.server;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 业务线程池的创建; 虚拟线程通过反射探测, 模块本身仍以 Java 8 编译
+ */
+final class BizExecutors {
+    private static final Logger log = LoggerFactory.getLogger(BizExecutors.class);
+
+    private BizExecutors() {
+    }
+
+    static ExecutorService pool(int bizNum, int bizQueueSize) {
+        return new ThreadPoolExecutor(bizNum, bizNum, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(bizQueueSize), new ThreadFactoryBuilder()
+                .setNameFormat("http-biz-%d").build());
+    }
+
+    /**
+     * 每个请求一个虚拟线程, 同时在途的请求数超过 maxInFlight 时拒绝; 运行时不支持虚拟线程则返回 null
+     */
+    static ExecutorService virtual(int maxInFlight) {
+        ThreadFactory factory = virtualThreadFactory("http-vt-");
+        if (factory == null) {
+            return null;
+        }
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ExecutorService executor = (ExecutorService) method.invoke(null, factory);
+            return new BoundedExecutorService(executor, maxInFlight);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Virtual thread executor is unavailable", e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 21 以下, 或 19/20 未开启 --enable-preview
+            log.debug("Virtual thread is unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * 限制同时在途的任务数, 超出时抛出 {@link RejectedExecutionException}
+     */
+    private static final class BoundedExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private BoundedExecutorService(ExecutorService delegate, int maxInFlight) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxInFlight);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many in-flight requests");
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
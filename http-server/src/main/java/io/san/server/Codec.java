@@ -0,0 +1,79 @@
+package io.san.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AsciiString;
+
+/**
+ * 请求/响应 body 的编码格式, 基于 Jackson 的数据格式(JsonFactory), 与 JSON 共用 {@link JsonUtils} 的映射配置。
+ * <p>
+ * server 按请求的 Content-Type 选择解码格式, 按 Accept 选择响应的编码格式, 都不匹配时用 JSON,
+ * handler 不需要修改。其他 Jackson 数据格式(例如 MessagePack)通过 {@link #of} 创建后用
+ * {@link HttpServer.Builder#codecs} 注册。
+ */
+public final class Codec {
+    public static final Codec JSON = new Codec("application/json", JsonUtils.jsonMapper.getFactory());
+    public static final Codec SMILE = new Codec("application/x-jackson-smile", new SmileFactory());
+    public static final Codec CBOR = new Codec("application/cbor", new CBORFactory());
+
+    private final String mediaType;
+    private final AsciiString contentType;
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+
+    private Codec(String mediaType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.contentType = AsciiString.cached(mediaType);
+        this.factory = factory;
+        this.writer = JsonUtils.jsonMapper.writer().with(factory);
+    }
+
+    /**
+     * @param mediaType 不带参数的 media type, 例如 application/x-msgpack
+     */
+    public static Codec of(String mediaType, JsonFactory factory) {
+        Preconditions.checkArgument(mediaType != null && mediaType.indexOf(';') < 0,
+                "mediaType must not contain parameters");
+        Preconditions.checkNotNull(factory, "factory can not be null");
+        return new Codec(mediaType, factory);
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    AsciiString contentType() {
+        return contentType;
+    }
+
+    /**
+     * 由 JSON reader 派生出同样目标类型、本格式的 reader
+     */
+    ObjectReader reader(ObjectReader jsonReader) {
+        return this == JSON ? jsonReader : jsonReader.with(this.factory);
+    }
+
+    /**
+     * 由 JSON writer 派生出同样声明类型、本格式的 writer
+     */
+    ObjectWriter writer(ObjectWriter jsonWriter) {
+        return this == JSON ? jsonWriter : jsonWriter.with(this.factory);
+    }
+
+    /**
+     * 直接编码到 buffer
+     */
+    void writeTo(ByteBuf buffer, Object value) {
+        JsonUtils.writeTo(buffer, this.writer, value);
+    }
+
+    @Override
+    public String toString() {
+        return mediaType;
+    }
+}
@@ -0,0 +1,107 @@
+package io.san.server;
+
+import java.util.Objects;
+
+/**
+ * server 支持的编码格式和协商规则, 第一个固定为 JSON
+ */
+final class Codecs {
+    static final Codecs JSON_ONLY = new Codecs(new Codec[0]);
+
+    private final Codec[] codecs;
+
+    Codecs(Codec[] extra) {
+        this.codecs = new Codec[extra.length + 1];
+        this.codecs[0] = Codec.JSON;
+        System.arraycopy(extra, 0, this.codecs, 1, extra.length);
+    }
+
+    Codec[] all() {
+        return codecs;
+    }
+
+    /**
+     * 除 JSON 外还有其他格式, 响应需要 Vary: Accept
+     */
+    boolean isNegotiable() {
+        return this.codecs.length > 1;
+    }
+
+    /**
+     * 按请求的 Content-Type 选择解码格式, 没有或不认识时按 JSON
+     */
+    Codec forContentType(String contentType) {
+        if (Objects.isNull(contentType) || !isNegotiable()) {
+            return Codec.JSON;
+        }
+        int end = contentType.indexOf(';');
+        Codec codec = find(contentType, 0, end < 0 ? contentType.length() : end);
+        return Objects.isNull(codec) ? Codec.JSON : codec;
+    }
+
+    /**
+     * 按 Accept 的 q 值选择响应格式, q 相同时取先出现的; 通配和不支持的类型按 JSON, 不返回 406
+     */
+    Codec forAccept(String accept) {
+        if (Objects.isNull(accept) || !isNegotiable()) {
+            return Codec.JSON;
+        }
+        Codec best = Codec.JSON;
+        float bestQ = 0;
+        int start = 0;
+        int length = accept.length();
+        while (start < length) {
+            int end = accept.indexOf(',', start);
+            if (end < 0) end = length;
+            int semicolon = accept.indexOf(';', start);
+            int typeEnd = semicolon >= 0 && semicolon < end ? semicolon : end;
+            Codec codec = find(accept, start, typeEnd);
+            if (Objects.isNull(codec) && isWildcard(accept, start, typeEnd)) {
+                codec = Codec.JSON;
+            }
+            if (Objects.nonNull(codec)) {
+                float q = quality(accept, typeEnd, end);
+                if (q > bestQ) {
+                    best = codec;
+                    bestQ = q;
+                }
+            }
+            start = end + 1;
+        }
+        return best;
+    }
+
+    private Codec find(String header, int start, int end) {
+        while (start < end && header.charAt(start) == ' ') start++;
+        while (end > start && header.charAt(end - 1) == ' ') end--;
+        for (Codec codec : this.codecs) {
+            String mediaType = codec.getMediaType();
+            if (mediaType.length() == end - start && header.regionMatches(true, start, mediaType, 0, mediaType.length())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * * / * 和 application/* 按 JSON 处理
+     */
+    private static boolean isWildcard(String header, int start, int end) {
+        while (start < end && header.charAt(start) == ' ') start++;
+        while (end > start && header.charAt(end - 1) == ' ') end--;
+        return header.startsWith("*/*", start) && end - start == 3
+                || header.regionMatches(true, start, "application/*", 0, 13) && end - start == 13;
+    }
+
+    private static float quality(String header, int start, int end) {
+        int q = header.indexOf("q=", start);
+        if (q < 0 || q >= end) {
+            return 1.0f;
+        }
+        try {
+            return Float.parseFloat(header.substring(q + 2, end).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -1,54 +1,136 @@
 package io.san.server;
 
-import java.util.concurrent.Semaphore;
+import java.net.InetAddress;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 无锁的连接数限制, 在 acceptor 线程上调用, 任何情况下都不阻塞。
+ * <p>
+ * limit 限制总连接数, perIpLimit 限制单个客户端 IP 的连接数, 小于等于 0 表示不限制。
+ */
 public class ConnectLimiter {
-    private Semaphore semaphore;
     private final int limit;
-    private final LongAdder connectAdder;
+    private final int perIpLimit;
+    private final AtomicInteger current;
+    private final AtomicInteger peak;
     private final LongAdder refusedAdder;
+    private final ConcurrentMap<InetAddress, AtomicInteger> ipCounters;
 
     public ConnectLimiter(int limit) {
+        this(limit, 0);
+    }
+
+    public ConnectLimiter(int limit, int perIpLimit) {
         this.limit = limit;
-        this.connectAdder = new LongAdder();
+        this.perIpLimit = perIpLimit;
+        this.current = new AtomicInteger();
+        this.peak = new AtomicInteger();
         this.refusedAdder = new LongAdder();
-        if (this.limit > 0) {
-            this.semaphore = new Semaphore(limit);
-        }
+        this.ipCounters = perIpLimit > 0 ? new ConcurrentHashMap<>() : null;
     }
 
 
     public long getCount() {
-        return connectAdder.sum();
+        return current.get();
     }
 
     public long getLimit() {
         return limit;
     }
 
+    public long getPerIpLimit() {
+        return perIpLimit;
+    }
 
-    public boolean tryAcquire(int timeout, TimeUnit unit) {
-        this.connectAdder.increment();
-        if (this.limit <= 0) return true;
-        try {
-            boolean permit = this.semaphore.tryAcquire(1, timeout, unit);
-            if (!permit) {
-                this.connectAdder.decrement();
+    public long getPeak() {
+        return peak.get();
+    }
+
+    public long getRefused() {
+        return refusedAdder.sum();
+    }
+
+    public boolean isSaturated() {
+        return this.limit > 0 && this.current.get() >= this.limit;
+    }
+
+
+    public boolean tryAcquire(InetAddress address) {
+        int count;
+        do {
+            count = this.current.get();
+            if (this.limit > 0 && count >= this.limit) {
                 this.refusedAdder.increment();
+                return false;
             }
-            return permit;
-        } catch (InterruptedException e) {
-            this.connectAdder.decrement();
+        } while (!this.current.compareAndSet(count, count + 1));
+
+        if (!tryAcquireIp(address)) {
+            this.current.decrementAndGet();
+            this.refusedAdder.increment();
+            return false;
+        }
+
+        int max;
+        while ((max = this.peak.get()) <= count && !this.peak.compareAndSet(max, count + 1)) {
+            // retry
+        }
+        return true;
+    }
+
+    public void release(InetAddress address) {
+        this.current.decrementAndGet();
+        if (Objects.isNull(this.ipCounters) || Objects.isNull(address)) {
+            return;
         }
-        return false;
+        AtomicInteger counter = this.ipCounters.get(address);
+        // 计数归零后标记为 -1 再移除, 与并发的 tryAcquireIp 配合, 不会丢失计数
+        if (Objects.nonNull(counter) && counter.decrementAndGet() == 0 && counter.compareAndSet(0, -1)) {
+            this.ipCounters.remove(address, counter);
+        }
+    }
+
+    /**
+     * 获取不再阻塞, timeout 不起作用; 不按 IP 计数, 需与 {@link #release()} 成对使用
+     *
+     * @deprecated 使用 {@link #tryAcquire(InetAddress)}
+     */
+    @Deprecated
+    public boolean tryAcquire(int timeout, TimeUnit unit) {
+        return tryAcquire(null);
     }
 
+    /**
+     * @deprecated 使用 {@link #release(InetAddress)}
+     */
+    @Deprecated
     public void release() {
-        this.connectAdder.decrement();
-        if (this.limit > 0) {
-            this.semaphore.release();
+        release(null);
+    }
+
+    private boolean tryAcquireIp(InetAddress address) {
+        if (Objects.isNull(this.ipCounters) || Objects.isNull(address)) {
+            return true;
+        }
+        for (; ; ) {
+            AtomicInteger counter = this.ipCounters.computeIfAbsent(address, key -> new AtomicInteger());
+            int count = counter.get();
+            if (count < 0) {
+                // 已被 release 标记移除
+                this.ipCounters.remove(address, counter);
+                continue;
+            }
+            if (count >= this.perIpLimit) {
+                return false;
+            }
+            if (counter.compareAndSet(count, count + 1)) {
+                return true;
+            }
         }
     }
 }
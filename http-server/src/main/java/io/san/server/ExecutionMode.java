@@ -0,0 +1,20 @@
+package io.san.server;
+
+/**
+ * MappingHandler 的执行模式
+ */
+public enum ExecutionMode {
+    /**
+     * 直接在 IO 线程上执行, 适合纯内存、非阻塞的 handler
+     */
+    INLINE,
+    /**
+     * 在有界的业务线程池上执行, 队列满时直接返回 503
+     */
+    POOL,
+    /**
+     * 每个请求一个虚拟线程(Java 21+), 适合阻塞的 JDBC/HTTP 调用; 在途请求数超过 maxInFlight 时返回 503。
+     * 运行时不支持虚拟线程时退化为 {@link #POOL}
+     */
+    VIRTUAL
+}
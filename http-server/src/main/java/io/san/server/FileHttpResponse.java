@@ -0,0 +1,102 @@
+package io.san.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Objects;
+
+/**
+ * {@link FileResponse} 打开后的响应, body 为空, 写出时由 {@link #write(ChannelHandlerContext)} 发送文件内容。
+ * <p>
+ * 在写出之前释放(连接已关闭等)时关闭文件; 写出后文件由 FileRegion / ChunkedNioFile 负责关闭。
+ */
+final class FileHttpResponse extends DefaultFullHttpResponse {
+    private static final Logger log = LoggerFactory.getLogger(FileHttpResponse.class);
+
+    private static final String CHUNKED_HANDLER = "chunked";
+    private static final int CHUNK_SIZE = 8192;
+
+    private final RandomAccessFile file;
+    private final long offset;
+    private final long length;
+    private boolean transferred;
+
+    FileHttpResponse(HttpResponseStatus status, RandomAccessFile file, long offset, long length) {
+        super(HttpVersion.HTTP_1_1, status, Unpooled.EMPTY_BUFFER, NettyHttpResponse.newHeaders(), EmptyHttpHeaders.INSTANCE);
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        headers().set(HttpHeaderNames.CONTENT_LENGTH, length);
+    }
+
+    /**
+     * 只在 event loop 上调用, 不 flush
+     *
+     * @return 最后一部分内容写出的 future
+     */
+    ChannelFuture write(ChannelHandlerContext context) throws IOException {
+        this.transferred = true;
+        context.write(new DefaultHttpResponse(protocolVersion(), status(), headers()));
+        if (this.length == 0) {
+            this.file.close();
+            return context.write(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        Channel channel = context.channel();
+        if (channel instanceof NioSocketChannel || channel instanceof EpollSocketChannel) {
+            // 明文 HTTP/1.1 连接, sendfile 直接从 page cache 写到 socket
+            context.write(new DefaultFileRegion(this.file.getChannel(), this.offset, this.length));
+            return context.write(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        // HTTP/2 stream 或不支持 FileRegion 的 transport, 按块读出后写出
+        ChannelPipeline pipeline = context.pipeline();
+        if (Objects.isNull(pipeline.get(CHUNKED_HANDLER))) {
+            pipeline.addBefore(context.name(), CHUNKED_HANDLER, new ChunkedWriteHandler());
+        }
+        return context.write(new HttpChunkedInput(
+                new ChunkedNioFile(this.file.getChannel(), this.offset, this.length, CHUNK_SIZE)));
+    }
+
+    @Override
+    public boolean release() {
+        closeIfNotTransferred();
+        return super.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        closeIfNotTransferred();
+        return super.release(decrement);
+    }
+
+    private void closeIfNotTransferred() {
+        if (this.transferred) {
+            return;
+        }
+        this.transferred = true;
+        try {
+            this.file.close();
+        } catch (IOException e) {
+            log.warn("Failed to close file", e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package io.san.server;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * handler 返回文件内容时使用, 文件不读入堆内存:
+ * 普通 HTTP/1.1 连接上通过 {@link io.netty.channel.DefaultFileRegion}(sendfile) 写出,
+ * HTTP/2 或不支持 sendfile 的 transport 上分块读取写出。
+ * <p>
+ * 支持单段 Range 请求和 Last-Modified/If-Modified-Since; {@link #mmap(boolean)} 的小文件映射到内存后缓存。
+ */
+public class FileResponse {
+    /**
+     * 不超过该大小的文件才做内存映射
+     */
+    static final long MMAP_MAX_FILE_SIZE = 1024 * 1024;
+    private static final long MMAP_CACHE_SIZE = 64 * 1024 * 1024;
+
+    private static final Cache<MappedKey, ByteBuf> MAPPED = CacheBuilder.newBuilder()
+            .maximumWeight(MMAP_CACHE_SIZE)
+            .weigher((MappedKey key, ByteBuf value) -> value.capacity())
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    private final File file;
+    private final long offset;
+    private final long length;
+    private String contentType;
+    private String attachment;
+    private boolean mmap;
+
+    private FileResponse(File file, long offset, long length) {
+        Preconditions.checkNotNull(file, "file can not be null");
+        Preconditions.checkArgument(offset >= 0, "offset must not be negative");
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static FileResponse of(File file) {
+        return new FileResponse(file, 0, -1);
+    }
+
+    public static FileResponse of(java.nio.file.Path path) {
+        return of(path.toFile());
+    }
+
+    /**
+     * 文件中的一段
+     */
+    public static FileResponse of(File file, long offset, long length) {
+        Preconditions.checkArgument(length >= 0, "length must not be negative");
+        return new FileResponse(file, offset, length);
+    }
+
+    /**
+     * 默认按文件名猜测, 猜不到时为 application/octet-stream
+     */
+    public FileResponse contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * 作为附件下载, 设置 Content-Disposition 的文件名
+     */
+    public FileResponse attachment(String fileName) {
+        this.attachment = fileName;
+        return this;
+    }
+
+    /**
+     * 频繁访问的小文件(不超过 1MB)映射到内存并缓存, 文件修改后重新映射
+     */
+    public FileResponse mmap(boolean mmap) {
+        this.mmap = mmap;
+        return this;
+    }
+
+    /**
+     * 在执行 handler 的线程上打开文件, 避免阻塞 IO 线程
+     */
+    FullHttpResponse toResponse(NettyHttpRequest request) throws IOException {
+        if (!this.file.isFile()) {
+            return NettyHttpResponse.make(HttpResponseStatus.NOT_FOUND);
+        }
+        long lastModified = this.file.lastModified();
+        String modified = DateFormatter.format(new Date(lastModified));
+        if (notModified(request.headers().get(HttpHeaderNames.IF_MODIFIED_SINCE), lastModified)) {
+            FullHttpResponse response = NettyHttpResponse.make(HttpResponseStatus.NOT_MODIFIED, Unpooled.EMPTY_BUFFER);
+            // 304 不描述 body, 不能带 Content-Length: 0
+            response.headers().remove(HttpHeaderNames.CONTENT_TYPE).remove(HttpHeaderNames.CONTENT_LENGTH)
+                    .set(HttpHeaderNames.LAST_MODIFIED, modified);
+            return response;
+        }
+
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(this.file, "r");
+        } catch (FileNotFoundException e) {
+            return NettyHttpResponse.make(HttpResponseStatus.NOT_FOUND);
+        }
+        try {
+            long fileLength = raf.length();
+            long start = Math.min(this.offset, fileLength);
+            long size = this.length < 0 ? fileLength - start : Math.min(this.length, fileLength - start);
+
+            HttpResponseStatus status = HttpResponseStatus.OK;
+            String contentRange = null;
+            long[] range = range(request.headers().get(HttpHeaderNames.RANGE), size);
+            if (Objects.nonNull(range) && range.length == 0) {
+                raf.close();
+                FullHttpResponse response = NettyHttpResponse.make(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                        Unpooled.EMPTY_BUFFER);
+                response.headers().remove(HttpHeaderNames.CONTENT_TYPE).set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + size);
+                return response;
+            }
+            if (Objects.nonNull(range)) {
+                status = HttpResponseStatus.PARTIAL_CONTENT;
+                contentRange = "bytes " + range[0] + "-" + (range[0] + range[1] - 1) + "/" + size;
+                start += range[0];
+                size = range[1];
+            }
+
+            FullHttpResponse response;
+            if (this.mmap && fileLength <= MMAP_MAX_FILE_SIZE) {
+                ByteBuf mapped = mapped(raf, lastModified, fileLength);
+                raf.close();
+                response = NettyHttpResponse.make(status, mapped.retainedSlice((int) start, (int) size));
+            } else {
+                response = new FileHttpResponse(status, raf, start, size);
+            }
+            HttpHeaders headers = response.headers();
+            headers.set(HttpHeaderNames.CONTENT_TYPE, contentType());
+            headers.set(HttpHeaderNames.LAST_MODIFIED, modified);
+            headers.set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+            if (Objects.nonNull(contentRange)) {
+                headers.set(HttpHeaderNames.CONTENT_RANGE, contentRange);
+            }
+            if (Objects.nonNull(this.attachment)) {
+                headers.set(HttpHeaderNames.CONTENT_DISPOSITION, "attachment; filename=\"" + this.attachment + "\"");
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private String contentType() {
+        if (Objects.nonNull(this.contentType)) {
+            return this.contentType;
+        }
+        String guess = URLConnection.guessContentTypeFromName(this.file.getName());
+        return Objects.isNull(guess) ? "application/octet-stream" : guess;
+    }
+
+    private static boolean notModified(String ifModifiedSince, long lastModified) {
+        if (Objects.isNull(ifModifiedSince)) {
+            return false;
+        }
+        Date since = DateFormatter.parseHttpDate(ifModifiedSince);
+        // HTTP 日期只精确到秒
+        return Objects.nonNull(since) && lastModified / 1000 <= since.getTime() / 1000;
+    }
+
+    /**
+     * 只支持单段 bytes range, 多段时按完整内容返回
+     *
+     * @return null 表示返回完整内容, 空数组表示范围不可满足(416), 否则为 {起始位置, 长度}
+     */
+    private static long[] range(String header, long size) {
+        if (Objects.isNull(header) || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // bytes=-n, 最后 n 个字节
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? size - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), size - 1);
+            }
+            if (start >= size || start > end) {
+                return new long[0];
+            }
+            return new long[]{start, end - start + 1};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private ByteBuf mapped(RandomAccessFile raf, long lastModified, long fileLength) throws IOException {
+        MappedKey key = new MappedKey(this.file.getCanonicalPath(), lastModified, fileLength);
+        try {
+            return MAPPED.get(key, () -> Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(
+                    raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileLength)).asReadOnly()));
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static final class MappedKey {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+
+        private MappedKey(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MappedKey)) return false;
+            MappedKey that = (MappedKey) o;
+            return lastModified == that.lastModified && length == that.length && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, length);
+        }
+    }
+}
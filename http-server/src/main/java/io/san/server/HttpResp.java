@@ -1,18 +1,112 @@
 package io.san.server;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.AsciiString;
+
+import java.util.Arrays;
+import java.util.Objects;
 
 public class HttpResp {
+    private static final CharSequence[] NO_HEADERS = new CharSequence[0];
+
     HttpResponseStatus status;
     HttpHeaders headers;
+    /**
+     * 响应 header, name/value 交替存放, 编码时才合并进响应; 没有设置时不分配
+     */
+    CharSequence[] headerTable = NO_HEADERS;
+    int headerCount;
     String content;
+    byte[] bytes;
+    ByteBuf buffer;
+    Object entity;
+    boolean encodeEntity;
+    /**
+     * entity 的编码格式, 由 dispatcher 按请求协商
+     */
+    Codec codec = Codec.JSON;
+    /**
+     * 路由按 handler 返回类型预先构建的 writer, 为 null 时用 codec 默认的 writer
+     */
+    ObjectWriter writer;
+    FileResponse file;
+    StreamResponse stream;
 
 
+    /**
+     * 兼容旧接口, 首次调用时分配; 新代码用 {@link #header} / {@link #addHeader}
+     */
     public HttpHeaders headers() {
+        if (Objects.isNull(this.headers)) {
+            this.headers = new DefaultHttpHeaders(false);
+        }
         return this.headers;
     }
 
+    /**
+     * 设置 header, 覆盖同名的 header(包括框架默认的 content-type 等)。
+     * name/value 建议使用 {@link io.netty.handler.codec.http.HttpHeaderNames} 和
+     * {@link io.netty.handler.codec.http.HttpHeaderValues} 或预先构造的 {@link io.netty.util.AsciiString} 常量,
+     * 编码时直接拷贝字节
+     */
+    public HttpResp header(CharSequence name, CharSequence value) {
+        int j = 0;
+        for (int i = 0; i < this.headerCount; i += 2) {
+            if (!AsciiString.contentEqualsIgnoreCase(this.headerTable[i], name)) {
+                this.headerTable[j] = this.headerTable[i];
+                this.headerTable[j + 1] = this.headerTable[i + 1];
+                j += 2;
+            }
+        }
+        Arrays.fill(this.headerTable, j, this.headerCount, null);
+        this.headerCount = j;
+        return addHeader(name, value);
+    }
+
+    /**
+     * 追加 header, 不覆盖同名的 header, 例如多个 set-cookie
+     */
+    public HttpResp addHeader(CharSequence name, CharSequence value) {
+        if (this.headerCount == this.headerTable.length) {
+            this.headerTable = Arrays.copyOf(this.headerTable, Math.max(8, this.headerCount * 2));
+        }
+        this.headerTable[this.headerCount++] = Objects.requireNonNull(name, "name");
+        this.headerTable[this.headerCount++] = Objects.requireNonNull(value, "value");
+        return this;
+    }
+
+    /**
+     * 合并到最终的响应 header: 每个 name 第一次出现时覆盖默认值, 之后追加
+     */
+    void mergeHeaders(HttpHeaders target) {
+        if (Objects.nonNull(this.headers)) {
+            for (String name : this.headers.names()) {
+                target.set(name, this.headers.getAll(name));
+            }
+        }
+        for (int i = 0; i < this.headerCount; i += 2) {
+            CharSequence name = this.headerTable[i];
+            if (seenBefore(name, i)) {
+                target.add(name, this.headerTable[i + 1]);
+            } else {
+                target.set(name, this.headerTable[i + 1]);
+            }
+        }
+    }
+
+    private boolean seenBefore(CharSequence name, int end) {
+        for (int i = 0; i < end; i += 2) {
+            if (AsciiString.contentEqualsIgnoreCase(this.headerTable[i], name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     public void ok(){
         this.status = HttpResponseStatus.OK;
@@ -22,4 +116,45 @@ public class HttpResp {
         this.status = HttpResponseStatus.OK;
         this.content = content;
     }
+
+    /**
+     * 已编码好的 body
+     */
+    public void ok(byte[] content){
+        this.status = HttpResponseStatus.OK;
+        this.bytes = content;
+    }
+
+    /**
+     * 已编码好的 body, buffer 的所有权转交给框架
+     */
+    public void ok(ByteBuf content){
+        this.status = HttpResponseStatus.OK;
+        this.buffer = content;
+    }
+
+    /**
+     * 编码时直接序列化到 channel allocator 分配的 buffer 中, 不经过 String
+     */
+    public void entity(Object entity){
+        this.status = HttpResponseStatus.OK;
+        this.entity = entity;
+        this.encodeEntity = true;
+    }
+
+    /**
+     * 返回文件内容, 文件由框架打开并在写出后关闭
+     */
+    public void file(FileResponse file){
+        this.status = HttpResponseStatus.OK;
+        this.file = file;
+    }
+
+    /**
+     * 流式返回, 逐项写出
+     */
+    public void stream(StreamResponse stream){
+        this.status = HttpResponseStatus.OK;
+        this.stream = stream;
+    }
 }
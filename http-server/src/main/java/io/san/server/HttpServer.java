@@ -1,27 +1,38 @@
 package io.san.server;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioChannelOption;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.*;
-import io.netty.handler.timeout.IdleStateEvent;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.codec.http2.*;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.AsciiString;
 import io.netty.util.Attribute;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpServer {
     private static final Logger log = LoggerFactory.getLogger(HttpServer.class);
+    private static final int MAX_CONTENT_LENGTH = 512 * 1024;
 
 
     public static Builder builder() {
@@ -30,6 +41,18 @@ public class HttpServer {
 
     public final static class Builder {
         private int maxConnect = -1;
+        private int maxConnectPerIp = -1;
+        private int pipeliningDepth = 16;
+        private int flushAfterWrites = 64;
+        private boolean http2;
+        private boolean compression;
+        private int compressionThreshold = 1024;
+        private int compressionLevel = 6;
+        private String[] compressibleTypes = {"application/json", "text/*", "application/javascript",
+                "application/xml"};
+        private long compressionCacheSize = 4 * 1024 * 1024;
+        private Codec[] codecs = {};
+        private int http2MaxStreams = 100;
         private int backlog;
         private int acceptorNum = 1;
         private int keepaliveTime = 60000;
@@ -39,6 +62,17 @@ public class HttpServer {
         private int port = 8080;
         private String host = "0.0.0.0";
         private int idleTime = 60;
+        private ExecutionMode executionMode = ExecutionMode.INLINE;
+        private int bizNum = Runtime.getRuntime().availableProcessors() * 4;
+        private int bizQueueSize = 1024;
+        private int maxInFlight = 10000;
+        private final Map<String, Executor> executors = new HashMap<>();
+        private Transport transport;
+        private boolean reusePort;
+        private int tcpFastOpen;
+        private int tcpDeferAccept;
+        private int rcvBuf;
+        private int sndBuf;
 
         public Builder() {
         }
@@ -58,11 +92,100 @@ public class HttpServer {
             return this;
         }
 
+        /**
+         * 单个客户端 IP 的最大连接数, 小于等于 0 表示不限制
+         */
+        public Builder maxConnectPerIp(int maxConnectPerIp) {
+            this.maxConnectPerIp = maxConnectPerIp;
+            return this;
+        }
+
+        /**
+         * 单个连接上同时处理中的请求数(HTTP/1.1 pipelining), 达到后暂停读取该连接; 1 表示逐个处理
+         */
+        public Builder pipeliningDepth(int pipeliningDepth) {
+            this.pipeliningDepth = pipeliningDepth;
+            return this;
+        }
+
+        /**
+         * 合并 flush 时最多积攒的响应数, 达到后立即 flush; 读事件结束或 channel 不可写时也会 flush
+         */
+        public Builder flushAfterWrites(int flushAfterWrites) {
+            this.flushAfterWrites = flushAfterWrites;
+            return this;
+        }
+
+        /**
+         * 开启明文 HTTP/2, 支持 h2c 升级和 prior knowledge, 同一端口继续支持 HTTP/1.1
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * 除 JSON 外支持的 body 编码格式, 按请求的 Content-Type / Accept 协商; 默认只用 JSON, 需要时通过 codecs(Codec.SMILE, ...) 开启
+         */
+        public Builder codecs(Codec... codecs) {
+            this.codecs = codecs;
+            return this;
+        }
+
+        /**
+         * HTTP/2 单个连接上同时打开的 stream 数(SETTINGS_MAX_CONCURRENT_STREAMS)
+         */
+        public Builder http2MaxStreams(int http2MaxStreams) {
+            this.http2MaxStreams = http2MaxStreams;
+            return this;
+        }
+
+        /**
+         * 开启 gzip/deflate 响应压缩, 在执行 handler 的线程上完成
+         */
+        public Builder compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * 小于该字节数的响应不压缩
+         */
+        public Builder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        public Builder compressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * 可压缩的 content-type, 支持 text/* 形式的通配
+         */
+        public Builder compressibleTypes(String... compressibleTypes) {
+            this.compressibleTypes = compressibleTypes;
+            return this;
+        }
+
+        /**
+         * {@link RestApi#precompress()} 路由的压缩结果缓存的最大字节数
+         */
+        public Builder compressionCacheSize(long compressionCacheSize) {
+            this.compressionCacheSize = compressionCacheSize;
+            return this;
+        }
+
         public Builder backlog(int backlog) {
             this.backlog = backlog;
             return this;
         }
 
+        /**
+         * acceptor 线程数; 开启 {@link #reusePort(boolean)} 且 transport 支持时, 会在同一端口上绑定同样数量的
+         * server channel, 由内核在各 acceptor 之间分发连接
+         */
         public Builder acceptorNum(int acceptorNum) {
             this.acceptorNum = acceptorNum;
             return this;
@@ -93,10 +216,100 @@ public class HttpServer {
             return this;
         }
 
+        public Builder executionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        public Builder bizNum(int bizNum) {
+            this.bizNum = bizNum;
+            return this;
+        }
+
+        public Builder bizQueueSize(int bizQueueSize) {
+            this.bizQueueSize = bizQueueSize;
+            return this;
+        }
+
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * 注册命名线程池, 供 {@link RestApi#executor()} 引用; 生命周期由调用方管理
+         */
+        public Builder executor(String name, Executor executor) {
+            this.executors.put(name, executor);
+            return this;
+        }
+
+        /**
+         * 指定 transport, 不可用时自动降级; 默认自动选择(epoll 可用时用 epoll, 否则 NIO)
+         */
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * SO_REUSEPORT, 仅 epoll / io_uring 支持
+         */
+        public Builder reusePort(boolean reusePort) {
+            this.reusePort = reusePort;
+            return this;
+        }
+
+        /**
+         * TCP_FASTOPEN 的等待队列长度, 0 为关闭; 仅 epoll / io_uring 支持
+         */
+        public Builder tcpFastOpen(int tcpFastOpen) {
+            this.tcpFastOpen = tcpFastOpen;
+            return this;
+        }
+
+        /**
+         * TCP_DEFER_ACCEPT 秒数, 有数据到达才唤醒 accept, 0 为关闭; 仅 epoll / io_uring 支持
+         */
+        public Builder tcpDeferAccept(int tcpDeferAccept) {
+            this.tcpDeferAccept = tcpDeferAccept;
+            return this;
+        }
+
+        /**
+         * 连接的 SO_RCVBUF, 默认 0: 不设置, 由内核自动调整; 固定一个较小的值会让大于它的请求受接收窗口限制
+         */
+        public Builder rcvBuf(int rcvBuf) {
+            this.rcvBuf = rcvBuf;
+            return this;
+        }
+
+        /**
+         * 连接的 SO_SNDBUF, 默认 0: 不设置, 由内核自动调整
+         */
+        public Builder sndBuf(int sndBuf) {
+            this.sndBuf = sndBuf;
+            return this;
+        }
+
         public HttpServer build() {
             Preconditions.checkNotNull(this.dispatcher, "Dispatcher can not be null");
-            return new HttpServer(keepaliveTime, maxConnect, backlog, acceptorNum, ioNum,
-                    port, host, maxRequest, this.idleTime, dispatcher);
+            Preconditions.checkNotNull(this.executionMode, "ExecutionMode can not be null");
+            Preconditions.checkArgument(this.bizNum > 0, "bizNum must be positive");
+            Preconditions.checkArgument(this.bizQueueSize > 0, "bizQueueSize must be positive");
+            Preconditions.checkArgument(this.maxInFlight > 0, "maxInFlight must be positive");
+            Preconditions.checkArgument(this.pipeliningDepth > 0, "pipeliningDepth must be positive");
+            Preconditions.checkArgument(this.flushAfterWrites > 0, "flushAfterWrites must be positive");
+            Preconditions.checkArgument(this.http2MaxStreams > 0, "http2MaxStreams must be positive");
+            Preconditions.checkArgument(this.compressionLevel >= 1 && this.compressionLevel <= 9,
+                    "compressionLevel must be in [1, 9]");
+            Preconditions.checkNotNull(this.compressibleTypes, "compressibleTypes can not be null");
+            Preconditions.checkNotNull(this.codecs, "codecs can not be null");
+            for (Codec codec : this.codecs) {
+                Preconditions.checkArgument(Objects.nonNull(codec) && codec != Codec.JSON,
+                        "codecs must not contain null or JSON");
+            }
+            return new HttpServer(this);
         }
 
     }
@@ -107,28 +320,79 @@ public class HttpServer {
 
         private final ConnectLimiter limiter;
 
-        private ConnectLimitHandler(int maxConnect) {
-            this.limiter = new ConnectLimiter(maxConnect);
+        private ConnectLimitHandler(ConnectLimiter limiter) {
+            this.limiter = limiter;
         }
 
         @Override
         public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
             Channel channel = (Channel) msg;
-            boolean permits = this.limiter.tryAcquire(10, TimeUnit.MILLISECONDS);
+            InetAddress address = channel.remoteAddress() instanceof InetSocketAddress
+                    ? ((InetSocketAddress) channel.remoteAddress()).getAddress() : null;
+            boolean permits = this.limiter.tryAcquire(address);
             if (!permits) {
                 // 直接关闭,避免 time_wait
                 channel.config().setOption(ChannelOption.SO_LINGER, 0);
                 channel.unsafe().closeForcibly();
+                if (this.limiter.isSaturated()) {
+                    // 达到总连接数上限, 暂停 accept, 有连接释放时恢复
+                    ctx.channel().config().setAutoRead(false);
+                    if (!this.limiter.isSaturated()) {
+                        ctx.channel().config().setAutoRead(true);
+                    }
+                }
                 return;
             }
-            Session session = new Session(maxRequest, keepaliveTime);
-            session.setLimit(limiter);
+            Session session = newSession();
+            session.setLimit(limiter, address);
             Attribute<Session> attr = channel.attr(ChannelKey.CONNECT_SESSION);
             attr.setIfAbsent(session);
             super.channelRead(ctx, msg);
         }
     }
 
+    /**
+     * 连接级别的生命周期: 空闲清理的注册和 Session 的释放; HTTP/2 升级后仍留在连接的 pipeline 上
+     */
+    @ChannelHandler.Sharable
+    private class ConnectionHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            super.channelActive(ctx);
+            if (Objects.nonNull(idleReaper)) {
+                idleReaper.register(ctx.channel());
+            }
+
+            log.error("new active:{}", ctx.channel());
+        }
+
+        @Override
+        public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+            super.channelRegistered(ctx);
+            log.error("new channelRegistered:{}", ctx.channel());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            super.channelInactive(ctx);
+            if (Objects.nonNull(idleReaper)) {
+                idleReaper.unregister(ctx.channel());
+            }
+            log.error("new channelInactive:{}", ctx.channel());
+
+        }
+
+
+        @Override
+        public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
+            super.channelUnregistered(ctx);
+            log.error("new channelUnregistered:{}", ctx.channel());
+            // 主动断开 被动断开 都会激活
+            releaseSession(ctx.channel());
+        }
+    }
+
     @ChannelHandler.Sharable
     private class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
@@ -139,101 +403,574 @@ public class HttpServer {
             this.dispatcher = dispatcher;
         }
 
+        @Override
+        protected void channelRead0(ChannelHandlerContext context, FullHttpRequest fullRequest) {
+
+            Attribute<Session> sessionAttr = context.channel().attr(ChannelKey.CONNECT_SESSION);
+            Session session = sessionAttr.get();
+            if (session.isClosing()) {
+                // 最后一个请求之后已解码的请求, 响应无法写出, 不执行
+                return;
+            }
+            // 不拷贝 body: fullRequest 在 channelRead0 返回后由 SimpleChannelInboundHandler 释放
+            NettyHttpRequest nettyHttpRequest = new NettyHttpRequest(fullRequest, context.alloc());
+            nettyHttpRequest.codecs = codecs;
+            if (streaming) {
+                nettyHttpRequest.route(session.takeRouted(fullRequest));
+            }
+            accept(context, session, nettyHttpRequest);
+            if (session.hasWaiting() || session.inFlight() > pipeliningDepth) {
+                // 在途请求达到 pipelining 深度, 排队并暂停读取, 由 writeResponse 继续分发
+                session.waiting(nettyHttpRequest.retain());
+                session.pauseRead(context.channel(), Session.PAUSE_PIPELINING);
+                return;
+            }
+            dispatch(context, session, nettyHttpRequest);
+        }
+
 
         @Override
-        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-            if (evt instanceof IdleStateEvent) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Channel Expired; closed:{}", ctx.channel());
-                }
-                ctx.close();
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            Attribute<Session> sessionAttr = ctx.channel().attr(ChannelKey.CONNECT_SESSION);
+            Session session = sessionAttr.get();
+            if (Objects.nonNull(session)) {
+                session.sequencer().writabilityChanged();
             }
+            super.channelWritabilityChanged(ctx);
+        }
 
-            super.userEventTriggered(ctx, evt);
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            super.exceptionCaught(ctx, cause);
+            releaseSession(ctx.channel());
+        }
+    }
 
+    /**
+     * HTTP/2 的每个 stream 是一个子 channel, 与 HTTP/1.1 共用同一套 body 聚合和请求处理;
+     * stream 的 Session 挂在连接的 Session 下, 请求计数和空闲时间计入连接
+     */
+    @ChannelHandler.Sharable
+    private class Http2StreamInitializer extends ChannelInitializer<Channel> {
+        private final HttpServerHandler handler;
 
+        private Http2StreamInitializer(HttpServerHandler handler) {
+            this.handler = handler;
         }
 
         @Override
-        public void channelReadComplete(ChannelHandlerContext ctx) {
-            ctx.flush();
+        protected void initChannel(Channel ch) {
+            Attribute<Session> parentAttr = ch.parent().attr(ChannelKey.CONNECT_SESSION);
+            Session parent = parentAttr.get();
+            if (Objects.isNull(parent)) {
+                ch.close();
+                return;
+            }
+            Attribute<Session> attr = ch.attr(ChannelKey.CONNECT_SESSION);
+            attr.set(parent.stream());
+            ch.closeFuture().addListener(future -> releaseSession(ch));
+
+            ch.pipeline().addLast("codec", new Http2StreamFrameToHttpObjectCodec(true));
+            if (streaming) {
+                ch.pipeline().addLast("streaming", new StreamingRequestHandler());
+            }
+            ch.pipeline().addLast("aggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+            ch.pipeline().addLast("bizHandler", this.handler);
         }
+    }
 
-        @Override
-        public void channelActive(ChannelHandlerContext ctx) throws Exception {
-            super.channelActive(ctx);
+    private Http2FrameCodec newHttp2FrameCodec() {
+        return Http2FrameCodecBuilder.forServer()
+                .initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams(this.http2MaxStreams))
+                .build();
+    }
 
-            log.error("new active:{}", ctx.channel());
+    /**
+     * 连接升级为 HTTP/2 之后, HTTP/1.1 的 handler 不再需要
+     */
+    private static void removeHttp1Handlers(ChannelPipeline pipeline) {
+        for (String name : new String[]{"streaming", "aggregator", "bizHandler"}) {
+            if (Objects.nonNull(pipeline.get(name))) {
+                pipeline.remove(name);
+            }
+        }
+    }
+
+    /**
+     * 同时支持 h2c 升级(Upgrade: h2c)和 prior knowledge(直接发送 HTTP/2 preface), 其余连接按 HTTP/1.1 处理
+     */
+    private ChannelHandler newCleartextHttp2Handler(Http2StreamInitializer streamInitializer) {
+        HttpServerCodec sourceCodec = new HttpServerCodec();
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol -> {
+            if (!AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                return null;
+            }
+            return new Http2ServerUpgradeCodec(newHttp2FrameCodec(), new Http2MultiplexHandler(streamInitializer)) {
+                @Override
+                public void upgradeTo(ChannelHandlerContext ctx, FullHttpRequest upgradeRequest) {
+                    super.upgradeTo(ctx, upgradeRequest);
+                    removeHttp1Handlers(ctx.pipeline());
+                }
+            };
+        }, MAX_CONTENT_LENGTH);
+        ChannelHandler priorKnowledge = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                removeHttp1Handlers(ch.pipeline());
+                ch.pipeline().addLast(newHttp2FrameCodec(), new Http2MultiplexHandler(streamInitializer));
+            }
+        };
+        return new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledge);
+    }
+
+    private void releaseSession(Channel channel) {
+        if (channel.hasAttr(ChannelKey.CONNECT_SESSION)) {
+            Attribute<Session> attr = channel.attr(ChannelKey.CONNECT_SESSION);
+            Session session = attr.get();
+            if (Objects.nonNull(session)) {
+                session.releaseWaiting();
+                session.sequencer().close();
+                session.clearLimitRef();
+                session.detach();
+                attr.set(null);
+                if (!(channel instanceof Http2StreamChannel)) {
+                    resumeAccept();
+                }
+            }
         }
+    }
+
+    /**
+     * 流式路由的请求不经过 HttpObjectAggregator, body 分片按到达顺序交给 {@link StreamingMappingHandler}。
+     * 每个连接一个实例。
+     */
+    private class StreamingRequestHandler extends ChannelInboundHandlerAdapter {
+        /**
+         * 尚未处理完的分片达到该数量时暂停读取
+         */
+        private static final int MAX_PENDING_CHUNKS = 4;
+
+        private StreamingUpload upload;
 
         @Override
-        public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
-            super.channelRegistered(ctx);
-            log.error("new channelRegistered:{}", ctx.channel());
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (Objects.isNull(this.upload) && isClosing(ctx)) {
+                // 最后一个请求之后已解码的数据直接丢弃
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+            if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+                HttpRequest head = (HttpRequest) msg;
+                if (head.decoderResult().isSuccess() && startUpload(ctx, head)) {
+                    return;
+                }
+            } else if (msg instanceof HttpContent && Objects.nonNull(this.upload)) {
+                HttpContent content = (HttpContent) msg;
+                StreamingUpload upload = this.upload;
+                if (content instanceof LastHttpContent) {
+                    this.upload = null;
+                }
+                upload.offer(content);
+                return;
+            }
+            super.channelRead(ctx, msg);
         }
 
         @Override
         public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (Objects.nonNull(this.upload)) {
+                this.upload.abort(new ClosedChannelException());
+                this.upload = null;
+            }
             super.channelInactive(ctx);
-            log.error("new channelInactive:{}", ctx.channel());
+        }
 
+        private boolean isClosing(ChannelHandlerContext ctx) {
+            Attribute<Session> sessionAttr = ctx.channel().attr(ChannelKey.CONNECT_SESSION);
+            Session session = sessionAttr.get();
+            return Objects.nonNull(session) && session.isClosing();
         }
 
+        /**
+         * 每个请求头都会经过这里, 只按请求行匹配; 非流式路由交给聚合后的请求继续使用, 不再匹配第二次
+         */
+        private boolean startUpload(ChannelHandlerContext ctx, HttpRequest head) {
+            Route route = dispatcher.route(head.method(), head.uri());
+            Attribute<Session> sessionAttr = ctx.channel().attr(ChannelKey.CONNECT_SESSION);
+            Session session = sessionAttr.get();
+            if (Objects.isNull(route) || Objects.isNull(session)) {
+                return false;
+            }
+            if (!route.isStreaming()) {
+                session.routed(head, route);
+                return false;
+            }
+            NettyHttpRequest request = new NettyHttpRequest(new DefaultFullHttpRequest(head.protocolVersion(),
+                    head.method(), head.uri(), Unpooled.EMPTY_BUFFER, head.headers(), EmptyHttpHeaders.INSTANCE),
+                    ctx.alloc());
+            request.codecs = codecs;
+            request.route(route);
+            accept(ctx, session, request);
+            if (HttpUtil.is100ContinueExpected(head)) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE,
+                        Unpooled.EMPTY_BUFFER));
+            }
+            Executor executor = selectExecutor(request);
+            this.upload = new StreamingUpload(ctx, session, request, (StreamingMappingHandler<?>) route.getHandler(),
+                    Objects.isNull(executor) ? MoreExecutors.directExecutor() : MoreExecutors.newSequentialExecutor(executor));
+            return true;
+        }
+    }
 
-        @Override
-        public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
-            super.channelUnregistered(ctx);
-            log.error("new channelUnregistered:{}", ctx.channel());
-            // 主动断开 被动断开 都会激活
-            releaseSession(ctx);
+    /**
+     * 一次流式上传的状态; 回调在顺序执行器上串行执行
+     */
+    private class StreamingUpload {
+        private final ChannelHandlerContext context;
+        private final Session session;
+        private final NettyHttpRequest request;
+        private final StreamingMappingHandler<?> handler;
+        private final Executor executor;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean aborted = new AtomicBoolean();
+        private volatile Exception failure;
+        /**
+         * onStart 已提交给执行器, 之后的失败都要通知 onAbort
+         */
+        private boolean started;
+        private boolean rejected;
+
+        private StreamingUpload(ChannelHandlerContext context, Session session, NettyHttpRequest request,
+                                StreamingMappingHandler<?> handler, Executor executor) {
+            this.context = context;
+            this.session = session;
+            this.request = request;
+            this.handler = handler;
+            this.executor = executor;
+            this.started = submit(() -> this.handler.onStart(this.request));
         }
 
-        @Override
-        protected void channelRead0(ChannelHandlerContext context, FullHttpRequest fullRequest) {
+        void offer(HttpContent content) {
+            boolean last = content instanceof LastHttpContent;
+            if (last && this.session.isClosing()) {
+                // 连接上的最后一个请求, body 已读完
+                this.session.pauseRead(this.context.channel(), Session.PAUSE_CLOSING);
+            }
+            if (this.rejected) {
+                content.release();
+                if (last) {
+                    writeResponse(this.context, this.session, this.request,
+                            NettyHttpResponse.make(HttpResponseStatus.SERVICE_UNAVAILABLE));
+                }
+                return;
+            }
+            if (this.pending.incrementAndGet() >= StreamingRequestHandler.MAX_PENDING_CHUNKS) {
+                this.session.pauseRead(this.context.channel(), Session.PAUSE_UPLOAD);
+            }
+            boolean accepted = submit(() -> {
+                try {
+                    ByteBuf chunk = content.content();
+                    if (Objects.isNull(this.failure) && chunk.isReadable()) {
+                        this.handler.onContent(this.request, chunk);
+                    }
+                } finally {
+                    content.release();
+                    if (this.pending.decrementAndGet() < StreamingRequestHandler.MAX_PENDING_CHUNKS) {
+                        resumeRead();
+                    }
+                }
+            });
+            if (!accepted) {
+                content.release();
+            }
+            if (last) {
+                if (!this.rejected) {
+                    submit(this::complete);
+                }
+                if (this.rejected) {
+                    writeResponse(this.context, this.session, this.request,
+                            NettyHttpResponse.make(HttpResponseStatus.SERVICE_UNAVAILABLE));
+                }
+            }
+        }
 
-            Attribute<Session> sessionAttr = context.channel().attr(ChannelKey.CONNECT_SESSION);
-            Session session = sessionAttr.get();
-            session.incrementReq();
-            FullHttpRequest copy = fullRequest.copy();
+        void abort(Throwable cause) {
+            try {
+                this.executor.execute(() -> fireAbort(cause));
+            } catch (RejectedExecutionException e) {
+                // 执行器持续拒绝时在 event loop 上通知, 保证 handler 能释放 onStart 中打开的资源
+                log.warn("Abort of streaming request {} is rejected, run it on the event loop", this.request.uri());
+                fireAbort(cause);
+            }
+        }
+
+        private void fireAbort(Throwable cause) {
+            if (!this.aborted.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                this.handler.onAbort(this.request, cause);
+            } catch (RuntimeException e) {
+                log.warn("onAbort of streaming request {} failed", this.request.uri(), e);
+            }
+        }
+
+        private boolean submit(StreamingTask task) {
             try {
-                NettyHttpRequest nettyHttpRequest = new NettyHttpRequest(copy);
-                FullHttpResponse response = this.dispatcher.handleRequest(nettyHttpRequest);
-                if (session.isKeepalive(nettyHttpRequest.keepalive())) {
-                    context.writeAndFlush(response);
-                } else {
-                    response.headers().set("Connection", "close");
-                    context.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+                this.executor.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        if (Objects.isNull(this.failure)) {
+                            this.failure = e;
+                            fireAbort(e);
+                        }
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                // 业务线程池已满, 丢弃剩余 body, 收完后返回 503
+                this.rejected = true;
+                this.pending.set(0);
+                this.session.resumeRead(this.context.channel(), Session.PAUSE_UPLOAD);
+                if (this.started && Objects.isNull(this.failure)) {
+                    // 已排队的分片不再交给 handler
+                    this.failure = e;
+                    abort(e);
                 }
-            } finally {
-                ReferenceCountUtil.release(copy);
+                return false;
             }
+        }
 
+        /**
+         * autoRead 的开关都在 event loop 上判断, 避免与 IO 线程暂停读取的判断交错;
+         * 只解除上传的暂停, pipelining 排队造成的暂停仍由 dispatchWaiting 解除
+         */
+        private void resumeRead() {
+            if (!this.context.executor().inEventLoop()) {
+                try {
+                    this.context.executor().execute(this::resumeRead);
+                } catch (RejectedExecutionException ignore) {
+                    // channel 已关闭
+                }
+                return;
+            }
+            if (this.pending.get() < StreamingRequestHandler.MAX_PENDING_CHUNKS) {
+                this.session.resumeRead(this.context.channel(), Session.PAUSE_UPLOAD);
+            }
+        }
 
+        private void complete() {
+            FullHttpResponse response = Objects.isNull(this.failure) ? handleRequest(this.request)
+                    : NettyHttpResponse.makeError(this.failure);
+            try {
+                this.context.executor().execute(() -> writeResponse(this.context, this.session, this.request, response));
+            } catch (RejectedExecutionException e) {
+                ReferenceCountUtil.release(response);
+            }
         }
+    }
 
+    private interface StreamingTask {
+        void run() throws Exception;
+    }
 
-        @Override
-        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-            super.exceptionCaught(ctx, cause);
-            releaseSession(ctx);
+    private Executor selectExecutor(NettyHttpRequest request) {
+        Route route = this.dispatcher.route(request);
+        if (Objects.nonNull(route) && !route.getExecutor().isEmpty()) {
+            return this.executors.get(route.getExecutor());
+        }
+        return this.bizExecutor;
+    }
+
+    /**
+     * 读到请求时分配序号并决定响应后是否保持连接。maxRequest 和 keepaliveTime 在读取时判断而不是写响应时:
+     * pipelining 预读的请求会让写响应时的计数偏大, 提前关闭连接, 或者让已执行的请求的响应被丢弃
+     */
+    private void accept(ChannelHandlerContext context, Session session, NettyHttpRequest request) {
+        request.sequence = session.incrementReq();
+        if (context.channel() instanceof Http2StreamChannel) {
+            // stream 不需要暂停读取, Http2 codec 关闭连接时会让进行中的 stream 完成
+            request.persistent = session.isConnectionKeepalive();
+        } else {
+            request.persistent = session.acceptKeepalive(request.keepalive());
+            Route route = request.route();
+            if (!request.persistent && (Objects.isNull(route) || !route.isStreaming())) {
+                // 流式上传的 body 还没读完, 由 StreamingUpload 收到最后一个分片后再暂停
+                session.pauseRead(context.channel(), Session.PAUSE_CLOSING);
+            }
+        }
+    }
+
+    /**
+     * 按路由选择执行器处理请求; 不论是否交给业务线程, request 都只在本方法返回前有效
+     */
+    private void dispatch(ChannelHandlerContext context, Session session, NettyHttpRequest request) {
+        Executor executor = selectExecutor(request);
+        if (Objects.isNull(executor)) {
+            FullHttpResponse response = handleRequest(context, session, request);
+            if (Objects.nonNull(response)) {
+                writeResponse(context, session, request, response);
+            }
+            return;
+        }
+
+        // 交给业务线程前多持有一次引用, handler 执行完后释放
+        request.retain();
+        try {
+            executor.execute(() -> {
+                FullHttpResponse response;
+                try {
+                    response = handleRequest(context, session, request);
+                } finally {
+                    request.release();
+                }
+                if (Objects.isNull(response)) {
+                    return;
+                }
+                // 响应统一回到 channel 的 event loop 上写出
+                try {
+                    context.executor().execute(() -> writeResponse(context, session, request, response));
+                } catch (RejectedExecutionException e) {
+                    ReferenceCountUtil.release(response);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满, 快速失败
+            request.release();
+            writeResponse(context, session, request,
+                    NettyHttpResponse.make(HttpResponseStatus.SERVICE_UNAVAILABLE));
+        }
+    }
+
+    /**
+     * 在执行 handler 的线程上调用, 先查响应缓存
+     *
+     * @return null 表示同一个缓存 key 正在由其他请求加载, 加载结束后在 channel 的 event loop 上重新分发该请求
+     */
+    private FullHttpResponse handleRequest(ChannelHandlerContext context, Session session, NettyHttpRequest request) {
+        CompletableFuture<FullHttpResponse> cached = Objects.isNull(this.responseCache) ? null
+                : this.responseCache.get(request, this.dispatcher::handleRequest);
+        if (Objects.isNull(cached)) {
+            return handleRequest(request);
+        }
+        FullHttpResponse response = cached.getNow(null);
+        if (Objects.isNull(response)) {
+            // 不阻塞当前线程, INLINE 模式下它是 event loop, 会拖住上面所有连接
+            request.retain();
+            cached.whenComplete((result, e) -> redispatch(context, session, request));
+            return null;
+        }
+        return postHandle(request, response);
+    }
+
+    /**
+     * 在执行 handler 的线程上调用, 不经过响应缓存
+     */
+    private FullHttpResponse handleRequest(NettyHttpRequest request) {
+        return postHandle(request, this.dispatcher.handleRequest(request));
+    }
+
+    /**
+     * 压缩也在执行 handler 的线程上完成
+     */
+    private FullHttpResponse postHandle(NettyHttpRequest request, FullHttpResponse response) {
+        if (response instanceof StreamHttpResponse) {
+            // 流式响应的数据在路由的执行器上生产
+            ((StreamHttpResponse) response).executor(selectExecutor(request));
+            return response;
+        }
+        if (Objects.isNull(this.compressor)) {
+            return response;
         }
+        try {
+            return this.compressor.compress(request, response);
+        } catch (RuntimeException e) {
+            log.warn("Failed to compress response of {}", request.uri(), e);
+            return response;
+        }
+    }
+
+    private void redispatch(ChannelHandlerContext context, Session session, NettyHttpRequest request) {
+        try {
+            context.executor().execute(() -> {
+                try {
+                    dispatch(context, session, request);
+                } finally {
+                    request.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            request.release();
+        }
+    }
 
+    /**
+     * 只在 event loop 上调用; 响应按请求序号依次写出, flush 由 pipeline 头部的 FlushConsolidationHandler 合并
+     */
+    private void writeResponse(ChannelHandlerContext context, Session session,
+                               NettyHttpRequest request, FullHttpResponse response) {
+        if (response instanceof StreamHttpResponse) {
+            // 流结束前仍算作在途请求, 连接不会被当作空闲清理
+            ((StreamHttpResponse) response).onFinish(() -> {
+                session.responded();
+                dispatchWaiting(context, session);
+            });
+        } else {
+            session.responded();
+        }
+        if (context.channel() instanceof Http2StreamChannel) {
+            // HTTP/2 请求没有 Connection 头, stream 随响应结束; maxRequest / keepaliveTime 按所属连接计,
+            // 达到后关闭连接, Http2 codec 会先发 GOAWAY 并等待进行中的 stream 结束
+            session.sequencer().offer(context, request.sequence, response, true);
+            Channel connection = context.channel().parent();
+            if (!request.persistent && connection.isActive()) {
+                connection.close();
+            }
+        } else {
+            session.sequencer().offer(context, request.sequence, response, request.persistent);
+        }
+        dispatchWaiting(context, session);
+    }
 
-        private void releaseSession(ChannelHandlerContext ctx) {
-            if (ctx.channel().hasAttr(ChannelKey.CONNECT_SESSION)) {
-                Attribute<Session> attr = ctx.channel().attr(ChannelKey.CONNECT_SESSION);
-                Session session = attr.get();
-                if (Objects.nonNull(session)) {
-                    session.clearLimitRef();
-                    attr.set(null);
+    /**
+     * 在途请求减少后继续分发排队的请求, 队列清空后恢复读取
+     */
+    private void dispatchWaiting(ChannelHandlerContext context, Session session) {
+        if (session.dispatching) {
+            return;
+        }
+        // 同步处理的请求会重入 writeResponse, 用循环代替递归
+        session.dispatching = true;
+        try {
+            NettyHttpRequest next;
+            while (session.inFlight() - session.waitingCount() < this.pipeliningDepth
+                    && Objects.nonNull(next = session.nextWaiting())) {
+                try {
+                    dispatch(context, session, next);
+                } finally {
+                    next.release();
                 }
             }
+        } finally {
+            session.dispatching = false;
+        }
+        if (!session.hasWaiting()) {
+            session.resumeRead(context.channel(), Session.PAUSE_PIPELINING);
         }
     }
 
-    private ChannelFuture channelFuture;
+    private ChannelGroup serverChannels;
     private EventLoopGroup acceptorGroup;
     private EventLoopGroup ioGroup;
+    private ExecutorService bizExecutor;
+    private boolean streaming;
+    private IdleReaper idleReaper;
+    private ResponseCache responseCache;
+    private Transport transport;
+    private ConnectionHandler connectionHandler;
+    private HttpServerHandler serverHandler;
+    private Http2StreamInitializer streamInitializer;
 
     private final String host;
     private final int port;
@@ -245,68 +982,228 @@ public class HttpServer {
     private final int maxRequest;
     private final int idleTime;
     private final AbstractDispatcher dispatcher;
+    private final ExecutionMode executionMode;
+    private final int bizNum;
+    private final int bizQueueSize;
+    private final int maxInFlight;
+    private final Map<String, Executor> executors;
+    private final Transport preferredTransport;
+    private final boolean reusePort;
+    private final int tcpFastOpen;
+    private final int tcpDeferAccept;
+    private final int rcvBuf;
+    private final int sndBuf;
+    private final ConnectLimiter connectLimiter;
+    private final int pipeliningDepth;
+    private final int flushAfterWrites;
+    private final boolean http2;
+    private final ResponseCompressor compressor;
+    private final Codecs codecs;
+    private final int http2MaxStreams;
 
-    private HttpServer(int keepaliveTime, int maxConnect, int backlog, int acceptorNum,
-                       int ioNum, int port, String host, int maxRequest, int idleTime,
-                       AbstractDispatcher dispatcher) {
-        this.keepaliveTime = keepaliveTime;
-        this.maxConnect = maxConnect;
-        this.backlog = backlog;
-        this.acceptorNum = acceptorNum;
-        this.ioNum = ioNum;
-        this.port = port;
-        this.host = host;
-        this.idleTime = idleTime;
-        this.maxRequest = maxRequest;
-        this.dispatcher = dispatcher;
+    private HttpServer(Builder builder) {
+        this.keepaliveTime = builder.keepaliveTime;
+        this.maxConnect = builder.maxConnect;
+        this.backlog = builder.backlog;
+        this.acceptorNum = builder.acceptorNum;
+        this.ioNum = builder.ioNum;
+        this.port = builder.port;
+        this.host = builder.host;
+        this.idleTime = builder.idleTime;
+        this.maxRequest = builder.maxRequest;
+        this.dispatcher = builder.dispatcher;
+        this.executionMode = builder.executionMode;
+        this.bizNum = builder.bizNum;
+        this.bizQueueSize = builder.bizQueueSize;
+        this.maxInFlight = builder.maxInFlight;
+        this.executors = new HashMap<>(builder.executors);
+        this.preferredTransport = builder.transport;
+        this.reusePort = builder.reusePort;
+        this.tcpFastOpen = builder.tcpFastOpen;
+        this.tcpDeferAccept = builder.tcpDeferAccept;
+        this.rcvBuf = builder.rcvBuf;
+        this.sndBuf = builder.sndBuf;
+        this.connectLimiter = new ConnectLimiter(builder.maxConnect, builder.maxConnectPerIp);
+        this.pipeliningDepth = builder.pipeliningDepth;
+        this.flushAfterWrites = builder.flushAfterWrites;
+        this.http2 = builder.http2;
+        this.compressor = builder.compression ? new ResponseCompressor(builder.compressionThreshold,
+                builder.compressionLevel, builder.compressibleTypes, builder.compressionCacheSize) : null;
+        this.http2MaxStreams = builder.http2MaxStreams;
+        this.codecs = builder.codecs.length == 0 ? Codecs.JSON_ONLY : new Codecs(builder.codecs);
     }
 
     public void start() {
+        prepare();
 
+        this.transport = Transport.select(this.preferredTransport);
         ServerBootstrap bootstrap = new ServerBootstrap();
-        this.acceptorGroup = new NioEventLoopGroup(this.acceptorNum, new ThreadFactoryBuilder()
+        this.acceptorGroup = this.transport.newGroup(this.acceptorNum, new ThreadFactoryBuilder()
                 .setNameFormat("http-accept-%d").build());
-        this.ioGroup = new NioEventLoopGroup(this.ioNum, new ThreadFactoryBuilder()
+        this.ioGroup = this.transport.newGroup(this.ioNum, new ThreadFactoryBuilder()
                 .setNameFormat("http-io-%d").build());
 
         bootstrap.group(this.acceptorGroup, this.ioGroup);
-        bootstrap.channel(SystemUtil.isLinux() ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
+        bootstrap.channel(this.transport.serverChannel());
 
-        bootstrap.handler(new ConnectLimitHandler(this.maxConnect));
+        bootstrap.handler(new ConnectLimitHandler(this.connectLimiter));
         if (this.backlog > 0) {
-            bootstrap.option(NioChannelOption.SO_BACKLOG, this.backlog);
+            bootstrap.option(ChannelOption.SO_BACKLOG, this.backlog);
+        }
+        if (this.reusePort) {
+            nativeOption(bootstrap, "SO_REUSEPORT", true);
+        }
+        if (this.tcpFastOpen > 0) {
+            nativeOption(bootstrap, "TCP_FASTOPEN", this.tcpFastOpen);
+        }
+        if (this.tcpDeferAccept > 0) {
+            nativeOption(bootstrap, "TCP_DEFER_ACCEPT", this.tcpDeferAccept);
+        }
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+        bootstrap.childOption(ChannelOption.SO_REUSEADDR, true);
+        bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+        if (this.rcvBuf > 0) {
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, this.rcvBuf);
+        }
+        if (this.sndBuf > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, this.sndBuf);
         }
-        bootstrap.childOption(NioChannelOption.TCP_NODELAY, true);
-        bootstrap.childOption(NioChannelOption.SO_REUSEADDR, true);
-        bootstrap.childOption(NioChannelOption.SO_KEEPALIVE, true);
-        bootstrap.childOption(NioChannelOption.SO_RCVBUF, 2048);
-        bootstrap.childOption(NioChannelOption.SO_SNDBUF, 2048);
         bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel ch) {
-                // 不能用这个 太多的定时任务 TODO
-//                ch.pipeline().addLast("idle", new IdleStateHandler(idleTime, 0, 0, TimeUnit.SECONDS));
-                ch.pipeline().addLast("codec", new HttpServerCodec());
-                ch.pipeline().addLast("aggregator", new HttpObjectAggregator(512 * 1024));
-                ch.pipeline().addLast("bizHandler", new HttpServerHandler(dispatcher));
+                HttpServer.this.initChannel(ch);
             }
         });
-        channelFuture = bootstrap.bind(this.host, this.port).syncUninterruptibly()
-                .addListener(future -> {
-                    log.info("Netty Http Server started on port {}", this.port);
-                });
+        // SO_REUSEPORT 下每次 bind 都是一个独立的 server channel, 依次注册到不同的 acceptor 线程上
+        int binds = this.reusePort && Objects.nonNull(this.transport.option("SO_REUSEPORT")) ? this.acceptorNum : 1;
+        this.serverChannels = new DefaultChannelGroup("http-server", GlobalEventExecutor.INSTANCE);
+        try {
+            for (int i = 0; i < binds; i++) {
+                this.serverChannels.add(bootstrap.bind(this.host, this.port).syncUninterruptibly().channel());
+            }
+        } catch (RuntimeException e) {
+            this.serverChannels.close().awaitUninterruptibly();
+            shutdown();
+            throw e;
+        }
+        log.info("Netty Http Server started on port {} with {} transport, {} server channel(s)",
+                this.port, this.transport, binds);
 
-        channelFuture.channel().closeFuture().addListener(future -> {
-            log.info("Netty Http Server Start Shutdown");
-            acceptorGroup.shutdownGracefully();
-            ioGroup.shutdownGracefully();
-        });
+        AtomicInteger opened = new AtomicInteger(binds);
+        for (Channel channel : this.serverChannels) {
+            channel.closeFuture().addListener(future -> {
+                if (opened.decrementAndGet() == 0) {
+                    log.info("Netty Http Server Start Shutdown");
+                    shutdown();
+                }
+            });
+        }
+    }
+
+    /**
+     * start 中与监听无关的准备: 校验路由、构建路由的 codec reader/writer、响应缓存和执行器。
+     * 与 {@link #newSession()}、{@link #initChannel(Channel)} 一起可以不绑定端口, 在 EmbeddedChannel 上驱动完整的 pipeline
+     */
+    void prepare() {
+        for (Route route : this.dispatcher.routes()) {
+            String executor = route.getExecutor();
+            Preconditions.checkState(executor.isEmpty() || this.executors.containsKey(executor),
+                    "Executor [%s] of mapping [%s] is not registered", executor, route);
+            this.streaming |= route.isStreaming();
+            route.prepareCodecs(this.codecs.all());
+        }
+        ResponseCache responseCache = new ResponseCache(this.dispatcher.routes());
+        if (!responseCache.isEmpty()) {
+            this.responseCache = responseCache;
+        }
+        if (this.idleTime > 0) {
+            this.idleReaper = new IdleReaper(TimeUnit.SECONDS.toMillis(this.idleTime));
+        }
+        if (this.executionMode == ExecutionMode.VIRTUAL) {
+            this.bizExecutor = BizExecutors.virtual(this.maxInFlight);
+            if (Objects.isNull(this.bizExecutor)) {
+                log.warn("Virtual threads are not supported by this runtime, fall back to a bounded pool");
+            }
+        }
+        if (this.executionMode != ExecutionMode.INLINE && Objects.isNull(this.bizExecutor)) {
+            this.bizExecutor = BizExecutors.pool(this.bizNum, this.bizQueueSize);
+        }
+        this.connectionHandler = new ConnectionHandler();
+        this.serverHandler = new HttpServerHandler(this.dispatcher);
+        this.streamInitializer = new Http2StreamInitializer(this.serverHandler);
+    }
+
+    /**
+     * 新连接的 Session, 不经过连接数限制
+     */
+    Session newSession() {
+        return new Session(this.maxRequest, this.keepaliveTime);
+    }
+
+    /**
+     * 新连接的 pipeline, 需要先 {@link #prepare()}
+     */
+    void initChannel(Channel ch) {
+        ch.pipeline().addLast("connection", this.connectionHandler);
+        // 读事件期间的 flush 推迟到 channelReadComplete, 业务线程写回的响应合并到下一次 event loop 任务
+        ch.pipeline().addLast("flush", new FlushConsolidationHandler(this.flushAfterWrites, true));
+        if (this.http2) {
+            ch.pipeline().addLast("codec", newCleartextHttp2Handler(this.streamInitializer));
+        } else {
+            ch.pipeline().addLast("codec", new HttpServerCodec());
+        }
+        if (this.streaming) {
+            ch.pipeline().addLast("streaming", new StreamingRequestHandler());
+        }
+        ch.pipeline().addLast("aggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+        ch.pipeline().addLast("bizHandler", this.serverHandler);
+    }
+
+    private void shutdown() {
+        acceptorGroup.shutdownGracefully();
+        ioGroup.shutdownGracefully();
+        if (Objects.nonNull(bizExecutor)) {
+            bizExecutor.shutdown();
+        }
+    }
+
+    private void resumeAccept() {
+        if (this.connectLimiter.getLimit() <= 0 || Objects.isNull(this.serverChannels)) {
+            return;
+        }
+        for (Channel channel : this.serverChannels) {
+            if (!channel.config().isAutoRead()) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    private <T> void nativeOption(ServerBootstrap bootstrap, String name, T value) {
+        ChannelOption<T> option = this.transport.option(name);
+        if (Objects.isNull(option)) {
+            log.warn("{} is not supported by {} transport, ignored", name, this.transport);
+            return;
+        }
+        bootstrap.option(option, value);
+    }
+
+    /**
+     * 当前/峰值/被拒绝的连接数
+     */
+    public ConnectLimiter getConnectLimiter() {
+        return this.connectLimiter;
+    }
 
+    /**
+     * 因空闲超过 idleTime 被关闭的连接数
+     */
+    public long getIdleReapedCount() {
+        return Objects.isNull(this.idleReaper) ? 0 : this.idleReaper.getReapedCount();
     }
 
     public void stop() {
-        if (Objects.nonNull(channelFuture)) {
-            channelFuture.channel().close();
+        if (Objects.nonNull(serverChannels)) {
+            serverChannels.close();
         }
     }
 }
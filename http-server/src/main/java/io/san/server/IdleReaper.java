@@ -0,0 +1,85 @@
+package io.san.server;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 空闲连接清理。每个 event loop 只有一个定时任务, 周期性扫描该 loop 上的连接,
+ * 关闭超过 idleTime 没有请求且没有未完成请求的连接; 代替每个连接一个 IdleStateHandler 定时任务。
+ * <p>
+ * 注册、注销和扫描都在连接所属的 event loop 上执行, 桶内不需要同步。
+ */
+class IdleReaper {
+    private static final Logger log = LoggerFactory.getLogger(IdleReaper.class);
+
+    private final long idleMillis;
+    private final long intervalMillis;
+    private final ConcurrentMap<EventExecutor, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder reaped = new LongAdder();
+
+    IdleReaper(long idleMillis) {
+        this.idleMillis = idleMillis;
+        this.intervalMillis = Math.max(1000L, idleMillis / 4);
+    }
+
+    void register(Channel channel) {
+        bucket(channel.eventLoop()).channels.add(channel);
+    }
+
+    void unregister(Channel channel) {
+        Bucket bucket = this.buckets.get(channel.eventLoop());
+        if (Objects.nonNull(bucket)) {
+            bucket.channels.remove(channel);
+        }
+    }
+
+    long getReapedCount() {
+        return this.reaped.sum();
+    }
+
+    private Bucket bucket(EventExecutor loop) {
+        return this.buckets.computeIfAbsent(loop, key -> {
+            Bucket bucket = new Bucket();
+            key.scheduleAtFixedRate(bucket::sweep, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+            return bucket;
+        });
+    }
+
+    private class Bucket {
+        private final Set<Channel> channels = new HashSet<>();
+
+        void sweep() {
+            long now = System.currentTimeMillis();
+            int count = 0;
+            for (Iterator<Channel> iterator = this.channels.iterator(); iterator.hasNext(); ) {
+                Channel channel = iterator.next();
+                Attribute<Session> attr = channel.attr(ChannelKey.CONNECT_SESSION);
+                Session session = attr.get();
+                if (Objects.nonNull(session) && !session.isIdle(now, idleMillis)) {
+                    continue;
+                }
+                iterator.remove();
+                channel.close();
+                count++;
+            }
+            if (count > 0) {
+                reaped.add(count);
+                if (log.isDebugEnabled()) {
+                    log.debug("Reaped {} idle connections, remain {}", count, this.channels.size());
+                }
+            }
+        }
+    }
+}
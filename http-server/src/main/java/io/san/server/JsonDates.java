@@ -0,0 +1,84 @@
+package io.san.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.DateDeserializers;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.DateSerializer;
+import com.fasterxml.jackson.databind.ser.std.SqlDateSerializer;
+import com.fasterxml.jackson.databind.ser.std.SqlTimeSerializer;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * java.util.Date 的读写改用不可变、线程安全的 {@link DateTimeFormatter}。
+ * <p>
+ * ObjectMapper 配置的 SimpleDateFormat 线程不安全, Jackson 每次序列化/反序列化都 clone 一份;
+ * 这里只替换没有 @JsonFormat 的默认情况, 输出与原格式一致。字段上有 @JsonFormat 时由 Jackson 原有的
+ * serializer/deserializer 处理; Calendar、Map 的 key 等其他用到日期格式的地方仍使用 ObjectMapper 的配置。
+ */
+final class JsonDates {
+
+    private JsonDates() {
+    }
+
+    static SimpleModule module(String pattern, TimeZone zone) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern).withZone(zone.toZoneId());
+        SimpleModule module = new SimpleModule("JsonDates");
+        // Timestamp 等子类也按 Date 的格式, java.sql.Date / Time 保持 Jackson 原有的 toString 格式
+        module.addSerializer(Date.class, new FormatterDateSerializer(formatter));
+        module.addSerializer(java.sql.Date.class, new SqlDateSerializer());
+        module.addSerializer(java.sql.Time.class, new SqlTimeSerializer());
+        module.addDeserializer(Date.class, new FormatterDateDeserializer(formatter));
+        return module;
+    }
+
+    private static final class FormatterDateSerializer extends DateSerializer {
+        private final DateTimeFormatter formatter;
+
+        FormatterDateSerializer(DateTimeFormatter formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        public void serialize(Date value, JsonGenerator g, SerializerProvider provider) throws IOException {
+            if (_asTimestamp(provider)) {
+                g.writeNumber(value.getTime());
+                return;
+            }
+            // java.sql.Timestamp 等子类不一定支持 toInstant
+            g.writeString(this.formatter.format(Instant.ofEpochMilli(value.getTime())));
+        }
+    }
+
+    private static final class FormatterDateDeserializer extends DateDeserializers.DateDeserializer {
+        private final DateTimeFormatter formatter;
+
+        FormatterDateDeserializer(DateTimeFormatter formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected Date _parseDate(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.hasToken(JsonToken.VALUE_STRING)) {
+                String text = p.getText().trim();
+                if (!text.isEmpty()) {
+                    try {
+                        return Date.from(Instant.from(this.formatter.parse(text)));
+                    } catch (DateTimeException ignore) {
+                        // 交给 Jackson 按 ObjectMapper 的格式再解析一次, 由它处理错误信息和兼容的写法
+                    }
+                }
+            }
+            return super._parseDate(p, ctxt);
+        }
+    }
+}
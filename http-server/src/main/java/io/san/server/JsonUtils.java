@@ -2,20 +2,61 @@ package io.san.server;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
 
+/**
+ * 全局共用的 Jackson 配置。
+ * <p>
+ * classpath 上有 jackson-module-afterburner 时自动注册, 用生成的字节码代替反射读写 bean 属性;
+ * 可通过 -Dio.san.json.afterburner=false 关闭。
+ */
 public class JsonUtils {
+    private static final Logger log = LoggerFactory.getLogger(JsonUtils.class);
+    private static final String AFTERBURNER = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
     final static ObjectMapper jsonMapper;
 
     static {
         jsonMapper = new ObjectMapper();
         jsonMapper.setTimeZone(TimeZone.getDefault());
-        jsonMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"));
+        jsonMapper.setDateFormat(new SimpleDateFormat(DATE_PATTERN));
+        jsonMapper.registerModule(JsonDates.module(DATE_PATTERN, TimeZone.getDefault()));
+        registerAfterburner();
+    }
+
+    /**
+     * 必须在创建任何 writer/reader 之前注册, 之后注册的 module 对已创建的不生效
+     */
+    private static void registerAfterburner() {
+        if (!Boolean.parseBoolean(System.getProperty("io.san.json.afterburner", "true"))) {
+            return;
+        }
+        try {
+            Class<?> module = Class.forName(AFTERBURNER, true, JsonUtils.class.getClassLoader());
+            jsonMapper.registerModule((Module) module.getDeclaredConstructor().newInstance());
+            log.info("Jackson afterburner module is enabled");
+        } catch (ClassNotFoundException ignore) {
+            // 未引入 afterburner, 使用反射
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Failed to register jackson afterburner module", e);
+        }
     }
 
 
@@ -28,6 +69,48 @@ public class JsonUtils {
     }
 
 
+    /**
+     * 以 UTF-8 直接写入 buffer
+     */
+    public static void writeTo(ByteBuf buffer, Object src) {
+        try {
+            jsonMapper.writeValue((OutputStream) new ByteBufOutputStream(buffer), src);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize data", e);
+        }
+    }
+
+    static void writeTo(ByteBuf buffer, ObjectWriter writer, Object src) {
+        try {
+            writer.writeValue((OutputStream) new ByteBufOutputStream(buffer), src);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize data", e);
+        }
+    }
+
+
+    /**
+     * 按声明类型预先解析好 serializer 的 writer, 省掉每次按值的实际类型查找。
+     * 只用于序列化方式不随运行时类型变化的类型(final 类、集合、Map、数组), 非 final 的 bean、
+     * 接口和 Object 返回 null, 仍按实际类型序列化, 避免丢失子类字段
+     */
+    static ObjectWriter writerFor(Type type) {
+        JavaType javaType = jsonMapper.getTypeFactory().constructType(type);
+        if (!javaType.isContainerType() && !javaType.isFinal()) {
+            return null;
+        }
+        return jsonMapper.writerFor(javaType);
+    }
+
+
+    /**
+     * 指定类型的 reader, 线程安全, 构建时解析好 deserializer
+     */
+    static ObjectReader readerFor(Type type) {
+        return jsonMapper.readerFor(jsonMapper.getTypeFactory().constructType(type));
+    }
+
+
     public static JsonNode toJsonNode(String jsonStr) throws IOException {
         return jsonMapper.readTree(jsonStr);
     }
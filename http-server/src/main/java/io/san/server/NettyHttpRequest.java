@@ -21,40 +21,278 @@
  */
 package io.san.server;
 
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Preconditions;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+import io.san.server.exception.IllegalRequestBodyException;
 
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
+/**
+ * 对聚合后请求的轻量包装, 不拷贝 body。
+ * <p>
+ * {@link #content()} 直接指向 {@code HttpObjectAggregator} 聚合出的 buffer, 由框架持有并在
+ * {@link MappingHandler#handle(NettyHttpRequest)} 返回后释放。handler 如果需要在返回之后
+ * (例如在其他线程里异步处理)继续访问 body, 必须先调用 {@link #retain()}, 用完后自行 {@link #release()};
+ * 不要缓存 {@link #content()} 而不持有引用。
+ */
 public class NettyHttpRequest implements FullHttpRequest {
 
     private FullHttpRequest realRequest;
+    private final ByteBufAllocator allocator;
+    private Route route;
+    /**
+     * 请求在连接上的序号, 响应按该序号依次写出
+     */
+    int sequence;
+    /**
+     * 响应写出后是否保持连接, 读取请求时决定
+     */
+    boolean persistent;
+    /**
+     * path 按 '/' 切分后各段的起止下标, 两个一组, 下标与 uri().split("/") 一致; 首次读取 path 变量时计算
+     */
+    private int[] segments;
+    private int segmentCount;
+    private QueryStringDecoder queryDecoder;
+    /**
+     * server 支持的编码格式, 由 server 在创建请求时设置
+     */
+    Codecs codecs = Codecs.JSON_ONLY;
+    private Codec responseCodec;
 
     public NettyHttpRequest(FullHttpRequest request){
+        this(request, ByteBufAllocator.DEFAULT);
+    }
+
+    public NettyHttpRequest(FullHttpRequest request, ByteBufAllocator allocator){
         this.realRequest = request;
+        this.allocator = allocator;
     }
 
-    public String contentText(){
-        return content().toString(Charset.forName("UTF-8"));
+    /**
+     * 所在 channel 的 allocator, 用于分配响应 buffer
+     */
+    public ByteBufAllocator alloc(){
+        return allocator;
     }
 
+    /**
+     * dispatcher 匹配到的路由, 匹配之前为 null
+     */
+    public Route route(){
+        return route;
+    }
+
+    public NettyHttpRequest route(Route route){
+        this.route = route;
+        return this;
+    }
+
+    public String contentText(){
+        return content().toString(CharsetUtil.UTF_8);
+    }
+
+    /**
+     * 按 Content-Type 选择的 body 编码格式
+     */
+    public Codec requestCodec() {
+        return this.codecs.forContentType(headers().get(HttpHeaderNames.CONTENT_TYPE));
+    }
+
+    /**
+     * 按 Accept 协商的响应编码格式
+     */
+    public Codec responseCodec() {
+        if (Objects.isNull(this.responseCodec)) {
+            this.responseCodec = this.codecs.forAccept(headers().get(HttpHeaderNames.ACCEPT));
+        }
+        return this.responseCodec;
+    }
+
+    /**
+     * 用路由预先构建的 reader 按 {@link #requestCodec()} 直接从 body 解析, 不经过 String; body 为空时返回 null。
+     * 只适用于 {@link TypedMappingHandler} 的路由
+     */
+    public Object readBody() throws IllegalRequestBodyException {
+        ObjectReader reader = Objects.isNull(this.route) ? null : this.route.getBodyReader(requestCodec());
+        Preconditions.checkState(Objects.nonNull(reader), "Route %s does not declare a request body type", this.route);
+        ByteBuf content = content();
+        if (!content.isReadable()) {
+            return null;
+        }
+        try {
+            if (content.hasArray()) {
+                return reader.readValue(content.array(), content.arrayOffset() + content.readerIndex(),
+                        content.readableBytes());
+            }
+            // 不移动 content 的 readerIndex
+            return reader.readValue((InputStream) new ByteBufInputStream(content.duplicate()));
+        } catch (IOException e) {
+            throw new IllegalRequestBodyException(e);
+        }
+    }
+
+    /**
+     * @param index 与 uri().split("/") 的下标一致, 例如 /user/{id} 中 id 的下标是 2; 不包含 query string
+     */
     public long getLongPathValue(int index){
-        String[] paths = uri().split("/");
-        return Long.parseLong(paths[index]);
+        int[] segments = segments(index);
+        return parseLong(uri(), segments[index * 2], segments[index * 2 + 1], Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     public String getStringPathValue(int index){
-        String[] paths = uri().split("/");
-        return paths[index];
+        int[] segments = segments(index);
+        return uri().substring(segments[index * 2], segments[index * 2 + 1]);
     }
 
     public int getIntPathValue(int index){
-        String[] paths = uri().split("/");
-        return Integer.parseInt(paths[index]);
+        int[] segments = segments(index);
+        return (int) parseLong(uri(), segments[index * 2], segments[index * 2 + 1], Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param name 路由 path 中的变量名, 例如 /user/{id} 中的 id
+     */
+    public long getLongPathValue(String name){
+        return getLongPathValue(variableIndex(name));
+    }
+
+    public String getStringPathValue(String name){
+        return getStringPathValue(variableIndex(name));
+    }
+
+    public int getIntPathValue(String name){
+        return getIntPathValue(variableIndex(name));
+    }
+
+    /**
+     * @return '?' 之后、'#' 之前的部分, 没有时为空串; 不做解码
+     */
+    public String queryString(){
+        String uri = uri();
+        int start = Router.pathEnd(uri);
+        if (start == uri.length() || uri.charAt(start) != '?') {
+            return "";
+        }
+        int end = uri.indexOf('#', start);
+        return uri.substring(start + 1, end < 0 ? uri.length() : end);
+    }
+
+    /**
+     * @return query string 中该参数的第一个值(已解码), 不存在时为 null
+     */
+    public String getQueryValue(String name){
+        List<String> values = queryParameters().get(name);
+        return Objects.isNull(values) || values.isEmpty() ? null : values.get(0);
+    }
+
+    public Map<String, List<String>> queryParameters(){
+        if (Objects.isNull(this.queryDecoder)) {
+            this.queryDecoder = new QueryStringDecoder(uri());
+        }
+        return this.queryDecoder.parameters();
+    }
+
+    private int[] segments(int index) {
+        if (Objects.isNull(this.segments)) {
+            String uri = uri();
+            int end = Router.pathEnd(uri);
+            int[] segments = new int[8];
+            int count = 0;
+            int start = 0;
+            while (true) {
+                int slash = uri.indexOf('/', start);
+                if (slash < 0 || slash > end) {
+                    slash = end;
+                }
+                if (count * 2 == segments.length) {
+                    segments = Arrays.copyOf(segments, segments.length * 2);
+                }
+                segments[count * 2] = start;
+                segments[count * 2 + 1] = slash;
+                count++;
+                if (slash == end) {
+                    break;
+                }
+                start = slash + 1;
+            }
+            // 与 split 一致, 去掉末尾的空段
+            while (count > 0 && segments[count * 2 - 2] == segments[count * 2 - 1]) {
+                count--;
+            }
+            this.segments = segments;
+            this.segmentCount = count;
+        }
+        if (index < 0 || index >= this.segmentCount) {
+            throw new IndexOutOfBoundsException("Path segment " + index + " of " + uri());
+        }
+        return this.segments;
+    }
+
+    /**
+     * 路由变量按非空段计数, 换算成 split 的下标
+     */
+    private int variableIndex(String name) {
+        String[] variables = Objects.isNull(this.route) ? null : this.route.getVariables();
+        int variable = -1;
+        for (int i = 0; Objects.nonNull(variables) && i < variables.length; i++) {
+            if (name.equals(variables[i])) {
+                variable = i;
+                break;
+            }
+        }
+        if (variable < 0) {
+            throw new IllegalArgumentException("No path variable named " + name + " in " + this.route);
+        }
+        segments(0);
+        for (int i = 0; i < this.segmentCount; i++) {
+            if (this.segments[i * 2] < this.segments[i * 2 + 1] && variable-- == 0) {
+                return i;
+            }
+        }
+        throw new IndexOutOfBoundsException("Path variable " + name + " of " + uri());
+    }
+
+    /**
+     * 直接在 uri 上解析十进制整数, 不截取子串
+     */
+    private static long parseLong(String s, int start, int end, long min, long max) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty path value of " + s);
+        }
+        boolean negative = s.charAt(start) == '-';
+        int i = negative || s.charAt(start) == '+' ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+        }
+        // 按负数累加, 与 Long.parseLong 一致, 避免 MIN_VALUE 溢出
+        long limit = negative ? min : -max;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin || result * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
     }
 
 
@@ -94,8 +332,9 @@ public class NettyHttpRequest implements FullHttpRequest {
     }
 
     @Override
-    public FullHttpRequest retain(int i) {
-        return realRequest.retain(i);
+    public NettyHttpRequest retain(int i) {
+        realRequest.retain(i);
+        return this;
     }
 
     @Override
@@ -104,18 +343,21 @@ public class NettyHttpRequest implements FullHttpRequest {
     }
 
     @Override
-    public FullHttpRequest retain() {
-        return realRequest.retain();
+    public NettyHttpRequest retain() {
+        realRequest.retain();
+        return this;
     }
 
     @Override
-    public FullHttpRequest touch() {
-        return realRequest.touch();
+    public NettyHttpRequest touch() {
+        realRequest.touch();
+        return this;
     }
 
     @Override
-    public FullHttpRequest touch(Object o) {
-        return realRequest.touch(o);
+    public NettyHttpRequest touch(Object o) {
+        realRequest.touch(o);
+        return this;
     }
 
     @Override
@@ -175,6 +417,8 @@ public class NettyHttpRequest implements FullHttpRequest {
 
     @Override
     public FullHttpRequest setUri(String s) {
+        this.segments = null;
+        this.queryDecoder = null;
         return realRequest.setUri(s);
     }
 
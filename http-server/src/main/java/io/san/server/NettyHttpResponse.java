@@ -22,11 +22,25 @@
 package io.san.server;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.ReadOnlyHttpHeaders;
+import io.netty.util.AsciiString;
+import io.netty.util.CharsetUtil;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
 
 import static io.netty.handler.codec.http.HttpHeaderNames.*;
 
@@ -34,42 +48,115 @@ public class NettyHttpResponse extends DefaultFullHttpResponse {
 
     private static final PooledByteBufAllocator BYTE_BUF_ALLOCATOR = new PooledByteBufAllocator(false);
 
+    //支持CORS 跨域访问
+    private static final AsciiString ALLOW_ORIGIN = AsciiString.cached("*");
+    private static final AsciiString ALLOW_HEADERS = AsciiString.cached("Origin, X-Requested-With, Content-Type, Accept, RCS-ACCESS-TOKEN");
+    private static final AsciiString ALLOW_METHODS = AsciiString.cached("GET,POST,PUT,DELETE");
+
+    /**
+     * 每个响应都带的 header, 只读模板, 构造响应时逐项拷贝, 不做校验和 String 转换
+     */
+    private static final HttpHeaders COMMON_HEADERS = new ReadOnlyHttpHeaders(false,
+            CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON,
+            ACCESS_CONTROL_ALLOW_ORIGIN, ALLOW_ORIGIN,
+            ACCESS_CONTROL_ALLOW_HEADERS, ALLOW_HEADERS,
+            ACCESS_CONTROL_ALLOW_METHODS, ALLOW_METHODS);
+
     private static final String CONTENT_NORMAL_200 = "{\"code\":200,\"message\":\"OK\"}";
+    private static final String CONTENT_ERROR_400 = "{\"code\":400,\"message\":\"BAD REQUEST\"}";
     private static final String CONTENT_ERROR_401 = "{\"code\":401,\"message\":\"UNAUTHORIZED\"}";
     private static final String CONTENT_ERROR_404 = "{\"code\":404,\"message\":\"NOT FOUND\"}";
     private static final String CONTENT_ERROR_405 = "{\"code\":405,\"message\":\"METHOD NOT ALLOWED\"}";
     private static final String CONTENT_ERROR_500 = "{\"code\":500,\"message\":\"%s\"}";
+    private static final String CONTENT_ERROR_503 = "{\"code\":503,\"message\":\"SERVICE UNAVAILABLE\"}";
 
-    private String content;
+    /**
+     * 固定内容的响应, body 和 header 只在类加载时编码一次
+     */
+    private static final Canned NORMAL_200 = new Canned(HttpResponseStatus.OK, CONTENT_NORMAL_200);
+    private static final Canned ERROR_400 = new Canned(HttpResponseStatus.BAD_REQUEST, CONTENT_ERROR_400);
+    private static final Canned ERROR_401 = new Canned(HttpResponseStatus.UNAUTHORIZED, CONTENT_ERROR_401);
+    private static final Canned ERROR_404 = new Canned(HttpResponseStatus.NOT_FOUND, CONTENT_ERROR_404);
+    private static final Canned ERROR_405 = new Canned(HttpResponseStatus.METHOD_NOT_ALLOWED, CONTENT_ERROR_405);
+    private static final Canned ERROR_503 = new Canned(HttpResponseStatus.SERVICE_UNAVAILABLE, CONTENT_ERROR_503);
 
     private NettyHttpResponse(HttpResponseStatus status, ByteBuf buffer) {
-        super(HttpVersion.HTTP_1_1, status, buffer);
-        headers().set(CONTENT_TYPE, "application/json");
+        this(status, buffer, COMMON_HEADERS);
         headers().setInt(CONTENT_LENGTH, content().readableBytes());
-        //支持CORS 跨域访问
-        headers().set(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-        headers().set(ACCESS_CONTROL_ALLOW_HEADERS, "Origin, X-Requested-With, Content-Type, Accept, RCS-ACCESS-TOKEN");
-        headers().set(ACCESS_CONTROL_ALLOW_METHODS, "GET,POST,PUT,DELETE");
+    }
+
+    private NettyHttpResponse(HttpResponseStatus status, ByteBuf buffer, HttpHeaders template) {
+        super(HttpVersion.HTTP_1_1, status, buffer, copyOf(template), EmptyHttpHeaders.INSTANCE);
+    }
+
+    private static HttpHeaders copyOf(HttpHeaders template) {
+        HttpHeaders headers = new DefaultHttpHeaders(false);
+        Iterator<Map.Entry<CharSequence, CharSequence>> iterator = template.iteratorCharSequence();
+        while (iterator.hasNext()) {
+            Map.Entry<CharSequence, CharSequence> entry = iterator.next();
+            headers.add(entry.getKey(), entry.getValue());
+        }
+        return headers;
     }
 
 
     public static FullHttpResponse make(HttpResp resp) {
-        FullHttpResponse fullHttpResponse = make(resp.status, resp.content);
-        fullHttpResponse.headers().add(resp.headers);
+        return make(resp, BYTE_BUF_ALLOCATOR);
+    }
+
+    public static FullHttpResponse make(HttpResp resp, ByteBufAllocator allocator) {
+        FullHttpResponse fullHttpResponse = new NettyHttpResponse(resp.status, encode(resp, allocator));
+        if (resp.encodeEntity && resp.codec != Codec.JSON) {
+            fullHttpResponse.headers().set(CONTENT_TYPE, resp.codec.contentType());
+        }
+        resp.mergeHeaders(fullHttpResponse.headers());
         return fullHttpResponse;
     }
 
+    private static ByteBuf encode(HttpResp resp, ByteBufAllocator allocator) {
+        if (Objects.nonNull(resp.buffer)) {
+            return resp.buffer;
+        }
+        if (Objects.nonNull(resp.bytes)) {
+            return allocator.buffer(resp.bytes.length).writeBytes(resp.bytes);
+        }
+        if (Objects.nonNull(resp.content)) {
+            return ByteBufUtil.writeUtf8(allocator, resp.content);
+        }
+        if (resp.encodeEntity) {
+            ByteBuf buffer = allocator.buffer();
+            try {
+                if (Objects.nonNull(resp.writer)) {
+                    JsonUtils.writeTo(buffer, resp.writer, resp.entity);
+                } else {
+                    resp.codec.writeTo(buffer, resp.entity);
+                }
+                return buffer;
+            } catch (RuntimeException e) {
+                buffer.release();
+                throw e;
+            }
+        }
+        return Unpooled.EMPTY_BUFFER;
+    }
+
     public static FullHttpResponse make(HttpResponseStatus status) {
+        if (HttpResponseStatus.BAD_REQUEST == status) {
+            return ERROR_400.make();
+        }
         if (HttpResponseStatus.UNAUTHORIZED == status) {
-            return NettyHttpResponse.make(HttpResponseStatus.UNAUTHORIZED, CONTENT_ERROR_401);
+            return ERROR_401.make();
         }
         if (HttpResponseStatus.NOT_FOUND == status) {
-            return NettyHttpResponse.make(HttpResponseStatus.NOT_FOUND, CONTENT_ERROR_404);
+            return ERROR_404.make();
         }
         if (HttpResponseStatus.METHOD_NOT_ALLOWED == status) {
-            return NettyHttpResponse.make(HttpResponseStatus.METHOD_NOT_ALLOWED, CONTENT_ERROR_405);
+            return ERROR_405.make();
+        }
+        if (HttpResponseStatus.SERVICE_UNAVAILABLE == status) {
+            return ERROR_503.make();
         }
-        return NettyHttpResponse.make(HttpResponseStatus.OK, CONTENT_NORMAL_200);
+        return NORMAL_200.make();
     }
 
     public static FullHttpResponse makeError(Exception exception) {
@@ -77,13 +164,45 @@ public class NettyHttpResponse extends DefaultFullHttpResponse {
         return NettyHttpResponse.make(HttpResponseStatus.INTERNAL_SERVER_ERROR, String.format(CONTENT_ERROR_500, message));
     }
 
+    /**
+     * 通用 header + 指定 body, content-type 等由调用方覆盖
+     */
+    static FullHttpResponse make(HttpResponseStatus status, ByteBuf content) {
+        return new NettyHttpResponse(status, content);
+    }
+
+    /**
+     * 通用 header 的可修改副本
+     */
+    static HttpHeaders newHeaders() {
+        return copyOf(COMMON_HEADERS);
+    }
+
     private static FullHttpResponse make(HttpResponseStatus status, String content) {
-        byte[] body = content.getBytes();
-        ByteBuf buffer = BYTE_BUF_ALLOCATOR.buffer(body.length);
-        buffer.writeBytes(body);
-        NettyHttpResponse response = new NettyHttpResponse(status, buffer);
-        response.content = content;
-        return response;
+        return new NettyHttpResponse(status, ByteBufUtil.writeUtf8(BYTE_BUF_ALLOCATOR, content));
+    }
+
+    private static final class Canned {
+        private final HttpResponseStatus status;
+        private final ByteBuf content;
+        private final HttpHeaders headers;
+
+        private Canned(HttpResponseStatus status, String content) {
+            byte[] bytes = content.getBytes(CharsetUtil.UTF_8);
+            this.status = status;
+            // 只读且不可释放, 每次响应用 retainedDuplicate 共享同一块内存
+            this.content = Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes).asReadOnly());
+            this.headers = new ReadOnlyHttpHeaders(false,
+                    CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON,
+                    CONTENT_LENGTH, AsciiString.of(String.valueOf(bytes.length)),
+                    ACCESS_CONTROL_ALLOW_ORIGIN, ALLOW_ORIGIN,
+                    ACCESS_CONTROL_ALLOW_HEADERS, ALLOW_HEADERS,
+                    ACCESS_CONTROL_ALLOW_METHODS, ALLOW_METHODS);
+        }
+
+        private FullHttpResponse make() {
+            return new NettyHttpResponse(status, content.retainedDuplicate(), headers);
+        }
     }
 
     @Override
@@ -92,7 +211,7 @@ public class NettyHttpResponse extends DefaultFullHttpResponse {
         builder.append(protocolVersion().toString()).append(" ").append(status().toString()).append("\n");
         builder.append(CONTENT_TYPE).append(": ").append(headers().get(CONTENT_TYPE)).append("\n");
         builder.append(CONTENT_LENGTH).append(": ").append(headers().get(CONTENT_LENGTH)).append("\n");
-        builder.append("content-body").append(": ").append(content).append("\n");
+        builder.append("content-body").append(": ").append(content().toString(CharsetUtil.UTF_8)).append("\n");
         return builder.toString();
     }
 }
@@ -0,0 +1,187 @@
+package io.san.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AsciiString;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link RestApi#cacheSeconds()} 路由的响应缓存, 每个路由一个按字节数限制大小的缓存, 保存编码好的响应。
+ * <p>
+ * 同一个 key 并发未命中时只执行一次 handler; 其余请求不阻塞当前线程(INLINE 模式下是 event loop),
+ * 拿到一个未完成的 future, 加载结束后重新处理。非 200 的结果以及文件、流式响应不缓存。
+ * 命中时带 ETag, If-None-Match 匹配时返回 304。
+ */
+final class ResponseCache {
+    private final Map<Route, RouteCache> caches = new IdentityHashMap<>();
+
+    ResponseCache(Collection<Route> routes) {
+        for (Route route : routes) {
+            RestApi api = route.getApi();
+            if (api.cacheSeconds() > 0 && HttpMethod.GET.name().equals(route.getMethod())) {
+                this.caches.put(route, new RouteCache(CacheBuilder.newBuilder()
+                        .expireAfterWrite(api.cacheSeconds(), TimeUnit.SECONDS)
+                        .maximumWeight(api.cacheMaxBytes())
+                        .weigher((String key, Entry entry) -> key.length() * 2 + entry.body.length)
+                        .build()));
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return this.caches.isEmpty();
+    }
+
+    /**
+     * 命中或由当前请求加载时返回已完成的 future; 同一个 key 正在由其他请求加载时返回的 future 在加载结束
+     * (包括失败和结果不可缓存)后以 null 完成, 调用方不应等待它, 完成后重新处理请求即可, 届时通常直接命中
+     *
+     * @return 路由没有开启缓存时返回 null, 由调用方直接处理
+     */
+    CompletableFuture<FullHttpResponse> get(NettyHttpRequest request,
+                                            Function<NettyHttpRequest, FullHttpResponse> handler) {
+        Route route = request.route();
+        RouteCache cache = Objects.isNull(route) ? null : this.caches.get(route);
+        if (Objects.isNull(cache) || !HttpMethod.GET.equals(request.method())) {
+            return null;
+        }
+        String key = key(request, route.getApi().cacheHeaders());
+        String ifNoneMatch = request.headers().get(HttpHeaderNames.IF_NONE_MATCH);
+        Entry entry = cache.entries.getIfPresent(key);
+        if (Objects.nonNull(entry)) {
+            return CompletableFuture.completedFuture(entry.toResponse(ifNoneMatch));
+        }
+        CompletableFuture<Entry> loading = new CompletableFuture<>();
+        CompletableFuture<Entry> pending = cache.loading.putIfAbsent(key, loading);
+        if (Objects.nonNull(pending)) {
+            return pending.handle((loaded, e) -> null);
+        }
+        try {
+            // 检查和登记之间可能刚好有其他请求加载完成
+            entry = cache.entries.getIfPresent(key);
+            if (Objects.nonNull(entry)) {
+                loading.complete(entry);
+                return CompletableFuture.completedFuture(entry.toResponse(ifNoneMatch));
+            }
+            FullHttpResponse response = handler.apply(request);
+            if (!HttpResponseStatus.OK.equals(response.status()) || response instanceof FileHttpResponse
+                    || response instanceof StreamHttpResponse) {
+                // 不缓存的结果只交给触发加载的请求, 等待的请求各自重新处理
+                loading.complete(null);
+                return CompletableFuture.completedFuture(response);
+            }
+            entry = Entry.of(response);
+            cache.entries.put(key, entry);
+            loading.complete(entry);
+            return CompletableFuture.completedFuture(entry.toResponse(ifNoneMatch));
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            cache.loading.remove(key, loading);
+        }
+    }
+
+    private static String key(NettyHttpRequest request, String[] headers) {
+        Codec codec = request.responseCodec();
+        if (headers.length == 0 && codec == Codec.JSON) {
+            return request.uri();
+        }
+        StringBuilder builder = new StringBuilder(request.uri());
+        for (String header : headers) {
+            builder.append('\n').append(Objects.toString(request.headers().get(header), ""));
+        }
+        // 不同编码格式的响应分开缓存
+        return builder.append('\n').append(codec.getMediaType()).toString();
+    }
+
+    private static final class RouteCache {
+        private final Cache<String, Entry> entries;
+        /**
+         * 正在加载的 key, 加载结束后移除
+         */
+        private final ConcurrentMap<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+
+        private RouteCache(Cache<String, Entry> entries) {
+            this.entries = entries;
+        }
+    }
+
+    private static final class Entry {
+        private final HttpResponseStatus status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final AsciiString etag;
+
+        private Entry(HttpResponseStatus status, HttpHeaders headers, byte[] body, AsciiString etag) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        static Entry of(FullHttpResponse response) {
+            try {
+                ByteBuf content = response.content();
+                byte[] body = ByteBufUtil.getBytes(content, content.readerIndex(), content.readableBytes());
+                AsciiString etag = AsciiString.of("\"" + Hashing.murmur3_128().hashBytes(body) + "\"");
+                HttpHeaders headers = new DefaultHttpHeaders(false).add(response.headers());
+                headers.set(HttpHeaderNames.ETAG, etag);
+                return new Entry(response.status(), headers, body, etag);
+            } finally {
+                response.release();
+            }
+        }
+
+        FullHttpResponse toResponse(String ifNoneMatch) {
+            if (matches(ifNoneMatch)) {
+                // 保留 ETag、Vary、CORS 等头, 去掉描述 body 的
+                HttpHeaders headers = this.headers.copy();
+                headers.remove(HttpHeaderNames.CONTENT_LENGTH);
+                headers.remove(HttpHeaderNames.CONTENT_TYPE);
+                return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED,
+                        Unpooled.EMPTY_BUFFER, headers, EmptyHttpHeaders.INSTANCE);
+            }
+            return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, this.status, Unpooled.wrappedBuffer(this.body),
+                    this.headers.copy(), EmptyHttpHeaders.INSTANCE);
+        }
+
+        private boolean matches(String ifNoneMatch) {
+            if (Objects.isNull(ifNoneMatch)) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || this.etag.contentEquals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io.san.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.AsciiString;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 响应压缩(gzip/deflate), 在执行 handler 的线程上完成, 不占用 IO 线程(INLINE 模式除外)。
+ * <p>
+ * 只压缩超过阈值且 content-type 可压缩的响应; 标记了 {@link RestApi#precompress()} 的路由,
+ * 相同 body 的压缩结果缓存起来重复使用。
+ */
+final class ResponseCompressor {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int threshold;
+    private final int level;
+    private final String[] contentTypes;
+    private final Cache<Key, byte[]> cache;
+
+    ResponseCompressor(int threshold, int level, String[] contentTypes, long cacheBytes) {
+        this.threshold = threshold;
+        this.level = level;
+        this.contentTypes = contentTypes;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(cacheBytes)
+                .weigher((Key key, byte[] value) -> key.body.length + value.length)
+                .build();
+    }
+
+    /**
+     * @return 压缩后的新响应, 原响应已释放; 不需要压缩时原样返回
+     */
+    FullHttpResponse compress(NettyHttpRequest request, FullHttpResponse response) {
+        if (!isCompressible(response)) {
+            return response;
+        }
+        // 是否压缩取决于 Accept-Encoding, 未压缩的响应也要带上, 避免共享缓存把它返回给接受压缩的客户端
+        response.headers().add(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        Encoding encoding = Encoding.accept(request.headers().get(HttpHeaderNames.ACCEPT_ENCODING));
+        if (Objects.isNull(encoding)) {
+            return response;
+        }
+        ByteBuf content = response.content();
+        // 总是复制: precompress 路由的 body 会作为缓存的 key 保留, 不能引用调用方可能修改的数组
+        byte[] body = ByteBufUtil.getBytes(content, content.readerIndex(), content.readableBytes(), true);
+        Route route = request.route();
+        byte[] compressed;
+        if (Objects.nonNull(route) && route.getApi().precompress()) {
+            try {
+                compressed = this.cache.get(new Key(encoding, body), () -> encoding.encode(body, this.level));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        } else {
+            compressed = encoding.encode(body, this.level);
+        }
+        if (compressed.length >= body.length) {
+            return response;
+        }
+        ByteBufAllocator allocator = request.alloc();
+        FullHttpResponse result = response.replace(allocator.buffer(compressed.length).writeBytes(compressed));
+        response.release();
+        HttpHeaders headers = result.headers();
+        headers.set(HttpHeaderNames.CONTENT_ENCODING, encoding.value);
+        headers.setInt(HttpHeaderNames.CONTENT_LENGTH, compressed.length);
+        return result;
+    }
+
+    private boolean isCompressible(FullHttpResponse response) {
+        int code = response.status().code();
+        if (code < 200 || code == HttpResponseStatus.NO_CONTENT.code() || code == HttpResponseStatus.NOT_MODIFIED.code()) {
+            return false;
+        }
+        if (response.content().readableBytes() < this.threshold
+                || response.headers().contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return false;
+        }
+        String contentType = response.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        if (Objects.isNull(contentType)) {
+            return false;
+        }
+        for (String type : this.contentTypes) {
+            if (type.endsWith("/*") ? contentType.regionMatches(true, 0, type, 0, type.length() - 1)
+                    : contentType.regionMatches(true, 0, type, 0, type.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum Encoding {
+        GZIP(HttpHeaderValues.GZIP) {
+            @Override
+            byte[] encode(byte[] body, int level) {
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, body.length);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+                deflate(body, level, true, out);
+                writeIntLE(out, (int) crc.getValue());
+                writeIntLE(out, body.length);
+                return out.toByteArray();
+            }
+        },
+        DEFLATE(HttpHeaderValues.DEFLATE) {
+            @Override
+            byte[] encode(byte[] body, int level) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 16);
+                deflate(body, level, false, out);
+                return out.toByteArray();
+            }
+        };
+
+        private final AsciiString value;
+
+        Encoding(AsciiString value) {
+            this.value = value;
+        }
+
+        abstract byte[] encode(byte[] body, int level);
+
+        /**
+         * 按 q 值选择, 相同时优先 gzip; 不接受压缩时返回 null
+         */
+        static Encoding accept(String acceptEncoding) {
+            if (Objects.isNull(acceptEncoding)) {
+                return null;
+            }
+            float gzip = -1, deflate = -1, any = -1;
+            for (String part : acceptEncoding.split(",")) {
+                int semicolon = part.indexOf(';');
+                String coding = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+                float q = 1.0f;
+                int qIndex = part.indexOf("q=", Math.max(semicolon, 0));
+                if (semicolon >= 0 && qIndex >= 0) {
+                    try {
+                        q = Float.parseFloat(part.substring(qIndex + 2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+                if (coding.equalsIgnoreCase("gzip")) {
+                    gzip = q;
+                } else if (coding.equalsIgnoreCase("deflate")) {
+                    deflate = q;
+                } else if (coding.equals("*")) {
+                    any = q;
+                }
+            }
+            if (gzip < 0) gzip = any;
+            if (deflate < 0) deflate = any;
+            if (gzip <= 0 && deflate <= 0) {
+                return null;
+            }
+            return gzip >= deflate ? GZIP : DEFLATE;
+        }
+
+        private static void deflate(byte[] body, int level, boolean nowrap, ByteArrayOutputStream out) {
+            Deflater deflater = new Deflater(level, nowrap);
+            try {
+                deflater.setInput(body);
+                deflater.finish();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static void writeIntLE(ByteArrayOutputStream out, int value) {
+            out.write(value);
+            out.write(value >> 8);
+            out.write(value >> 16);
+            out.write(value >> 24);
+        }
+    }
+
+    private static final class Key {
+        private final Encoding encoding;
+        private final byte[] body;
+        private final int hash;
+
+        private Key(Encoding encoding, byte[] body) {
+            this.encoding = encoding;
+            this.body = body;
+            this.hash = 31 * encoding.hashCode() + Arrays.hashCode(body);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return encoding == key.encoding && Arrays.equals(body, key.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
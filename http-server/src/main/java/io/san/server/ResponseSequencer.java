@@ -0,0 +1,174 @@
+package io.san.server;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * HTTP/1.1 pipelining 的响应排序。同一连接上的请求可以并发处理、乱序完成,
+ * 响应按请求的序号(从 1 开始)依次写出, 先完成的暂存, 直到前面的响应都已写出。
+ * <p>
+ * 流式响应({@link StreamHttpResponse})写出期间, 后面的响应都暂存, 直到它结束。
+ * <p>
+ * 只在连接所属的 event loop 上调用, 不需要同步。
+ */
+final class ResponseSequencer {
+    private static final Logger log = LoggerFactory.getLogger(ResponseSequencer.class);
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private FullHttpResponse[] responses = new FullHttpResponse[INITIAL_CAPACITY];
+    private boolean[] keepalives = new boolean[INITIAL_CAPACITY];
+    private int next = 1;
+    private boolean closed;
+    /**
+     * 正在写出的流式响应
+     */
+    private StreamHttpResponse stream;
+
+    /**
+     * 提交序号为 seq 的响应, 能按顺序写出的立即写出
+     */
+    void offer(ChannelHandlerContext context, int seq, FullHttpResponse response, boolean keepalive) {
+        if (this.closed || seq < this.next) {
+            ReferenceCountUtil.release(response);
+            return;
+        }
+        if (seq != this.next) {
+            park(seq, response, keepalive);
+            return;
+        }
+        drain(context, response, keepalive);
+    }
+
+    /**
+     * 连接可写状态变化, 通知正在写出的流式响应
+     */
+    void writabilityChanged() {
+        if (Objects.nonNull(this.stream)) {
+            this.stream.writabilityChanged();
+        }
+    }
+
+    /**
+     * 连接关闭, 释放尚未写出的响应, 之后提交的响应直接释放
+     */
+    void close() {
+        this.closed = true;
+        if (Objects.nonNull(this.stream)) {
+            this.stream.cancel();
+            this.stream = null;
+        }
+        for (int i = 0; i < this.responses.length; i++) {
+            if (Objects.nonNull(this.responses[i])) {
+                ReferenceCountUtil.release(this.responses[i]);
+                this.responses[i] = null;
+            }
+        }
+    }
+
+    /**
+     * 从 response(序号为 next)开始依次写出; 遇到流式响应时停下, 等它结束后由 {@link #streamed} 继续
+     */
+    private void drain(ChannelHandlerContext context, FullHttpResponse response, boolean keepalive) {
+        boolean written = false;
+        while (Objects.nonNull(response)) {
+            written = true;
+            if (response instanceof StreamHttpResponse) {
+                if (!keepalive) {
+                    response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+                }
+                boolean streamKeepalive = keepalive;
+                this.stream = (StreamHttpResponse) response;
+                this.stream.start(context, keepalive, () -> streamed(context, streamKeepalive));
+                break;
+            }
+            if (!write(context, response, keepalive)) {
+                return;
+            }
+            int index = ++this.next & (this.responses.length - 1);
+            response = this.responses[index];
+            keepalive = this.keepalives[index];
+            this.responses[index] = null;
+        }
+        if (written) {
+            context.flush();
+        }
+    }
+
+    private void streamed(ChannelHandlerContext context, boolean keepalive) {
+        this.stream = null;
+        if (this.closed) {
+            return;
+        }
+        if (!keepalive) {
+            close();
+            return;
+        }
+        int index = ++this.next & (this.responses.length - 1);
+        FullHttpResponse response = this.responses[index];
+        this.responses[index] = null;
+        drain(context, response, this.keepalives[index]);
+    }
+
+    /**
+     * @return false 表示连接将被关闭, 后续响应不再写出
+     */
+    private boolean write(ChannelHandlerContext context, FullHttpResponse response, boolean keepalive) {
+        if (!keepalive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        }
+        ChannelFuture future;
+        if (response instanceof FileHttpResponse) {
+            try {
+                future = ((FileHttpResponse) response).write(context);
+            } catch (IOException e) {
+                log.warn("Failed to write file response", e);
+                response.release();
+                close();
+                context.close();
+                return false;
+            }
+        } else {
+            future = context.write(response);
+        }
+        if (keepalive) {
+            return true;
+        }
+        context.flush();
+        future.addListener(ChannelFutureListener.CLOSE);
+        close();
+        return false;
+    }
+
+    private void park(int seq, FullHttpResponse response, boolean keepalive) {
+        while (seq - this.next >= this.responses.length) {
+            grow();
+        }
+        int index = seq & (this.responses.length - 1);
+        this.responses[index] = response;
+        this.keepalives[index] = keepalive;
+    }
+
+    private void grow() {
+        int capacity = this.responses.length;
+        FullHttpResponse[] responses = new FullHttpResponse[capacity * 2];
+        boolean[] keepalives = new boolean[capacity * 2];
+        for (int seq = this.next; seq < this.next + capacity; seq++) {
+            int index = seq & (capacity - 1);
+            responses[seq & (capacity * 2 - 1)] = this.responses[index];
+            keepalives[seq & (capacity * 2 - 1)] = this.keepalives[index];
+        }
+        this.responses = responses;
+        this.keepalives = keepalives;
+    }
+}
@@ -24,4 +24,35 @@ public @interface RestApi {
      * @return
      */
     boolean equal() default true;
+
+    /**
+     * 执行该路由的线程池名称, 需通过 HttpServer.Builder#executor(String, Executor) 注册;
+     * 为空时使用 server 的默认执行模式
+     * @return
+     */
+    String executor() default "";
+
+    /**
+     * 开启响应压缩时, 缓存该路由相同 body 的压缩结果; 适合返回内容很少变化的路由
+     * @return
+     */
+    boolean precompress() default false;
+
+    /**
+     * GET 路由的响应缓存时间(秒), 大于 0 时开启; 缓存的是编码好的响应, 命中时不执行 handler
+     * @return
+     */
+    int cacheSeconds() default 0;
+
+    /**
+     * 除 uri(含 query string)外参与缓存 key 的请求 header, 例如 Accept-Language
+     * @return
+     */
+    String[] cacheHeaders() default {};
+
+    /**
+     * 该路由缓存的最大字节数
+     * @return
+     */
+    long cacheMaxBytes() default 1024 * 1024;
 }
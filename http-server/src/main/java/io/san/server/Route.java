@@ -0,0 +1,192 @@
+package io.san.server;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 一条已注册的路由: {@link RestApi} 注解 + 对应的 {@link MappingHandler}
+ */
+public class Route {
+    private final Path path;
+    private final RestApi api;
+    private final MappingHandler handler;
+    private final String method;
+    private final boolean prefix;
+    /**
+     * 按 path 段下标记录的变量名, 非变量段为 null
+     */
+    private final String[] variables;
+    /**
+     * {@link TypedMappingHandler} 请求 body 类型的 reader, 注册时构建; 其他 handler 为 null
+     */
+    private final ObjectReader bodyReader;
+    /**
+     * 其他编码格式的 body reader, server 启动时构建
+     */
+    private Map<Codec, ObjectReader> codecReaders = Collections.emptyMap();
+    /**
+     * 按 {@link MappingHandler} 返回类型 T 预先构建的 writer, 注册时构建; 类型不适合按声明类型序列化时为 null
+     */
+    private final ObjectWriter entityWriter;
+    private final Class<?> entityClass;
+    /**
+     * 其他编码格式的 entity writer, server 启动时构建
+     */
+    private Map<Codec, ObjectWriter> codecWriters = Collections.emptyMap();
+
+    public Route(RestApi api, MappingHandler handler) {
+        this.api = api;
+        this.handler = handler;
+        this.path = Path.make(api);
+        this.method = api.method().toUpperCase();
+        this.prefix = !api.equal();
+        this.variables = parseVariables(segments(api.path()));
+        this.bodyReader = bodyReader(handler);
+        Type entityType = entityType(handler);
+        this.entityWriter = Objects.isNull(entityType) ? null : JsonUtils.writerFor(entityType);
+        this.entityClass = Objects.isNull(this.entityWriter) ? null : TypeToken.of(entityType).getRawType();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public RestApi getApi() {
+        return api;
+    }
+
+    public MappingHandler getHandler() {
+        return handler;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public boolean isPrefix() {
+        return prefix;
+    }
+
+    /**
+     * path 的段数, 即在路由树中的深度
+     */
+    int depth() {
+        return variables.length;
+    }
+
+    public String getExecutor() {
+        return api.executor();
+    }
+
+    public boolean isStreaming() {
+        return handler instanceof StreamingMappingHandler;
+    }
+
+    public ObjectReader getBodyReader() {
+        return bodyReader;
+    }
+
+    ObjectReader getBodyReader(Codec codec) {
+        if (Objects.isNull(this.bodyReader) || codec == Codec.JSON) {
+            return this.bodyReader;
+        }
+        ObjectReader reader = this.codecReaders.get(codec);
+        return Objects.nonNull(reader) ? reader : codec.reader(this.bodyReader);
+    }
+
+    /**
+     * @param entity 实际返回的值, 与声明类型不符(例如自定义 dispatcher 包装过)时不用预先构建的 writer
+     * @return null 时按 codec 默认的 writer 编码
+     */
+    ObjectWriter getEntityWriter(Codec codec, Object entity) {
+        if (Objects.isNull(this.entityWriter) || Objects.nonNull(entity) && !this.entityClass.isInstance(entity)) {
+            return null;
+        }
+        if (codec == Codec.JSON) {
+            return this.entityWriter;
+        }
+        ObjectWriter writer = this.codecWriters.get(codec);
+        return Objects.nonNull(writer) ? writer : codec.writer(this.entityWriter);
+    }
+
+    void prepareCodecs(Codec[] codecs) {
+        if (Objects.nonNull(this.bodyReader)) {
+            Map<Codec, ObjectReader> readers = new IdentityHashMap<>();
+            for (Codec codec : codecs) {
+                readers.put(codec, codec.reader(this.bodyReader));
+            }
+            this.codecReaders = readers;
+        }
+        if (Objects.nonNull(this.entityWriter)) {
+            Map<Codec, ObjectWriter> writers = new IdentityHashMap<>();
+            for (Codec codec : codecs) {
+                writers.put(codec, codec.writer(this.entityWriter));
+            }
+            this.codecWriters = writers;
+        }
+    }
+
+    String[] getVariables() {
+        return variables;
+    }
+
+    static List<String> segments(String uri) {
+        List<String> segments = new ArrayList<>();
+        int length = uri.length();
+        int start = 0;
+        while (start < length) {
+            int end = uri.indexOf('/', start);
+            if (end < 0) end = length;
+            if (end > start) {
+                segments.add(uri.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    static boolean isVariable(String segment) {
+        return segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static String[] parseVariables(List<String> segments) {
+        String[] variables = new String[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (isVariable(segment)) {
+                variables[i] = segment.substring(1, segment.length() - 1);
+            }
+        }
+        return variables;
+    }
+
+    private static ObjectReader bodyReader(MappingHandler handler) {
+        if (!(handler instanceof TypedMappingHandler)) {
+            return null;
+        }
+        // 从 handler 实现类解析 TypedMappingHandler<Q, T> 的 Q, 解析不出时按 Object(Map/List)读取
+        Type type = TypeToken.of(handler.getClass()).resolveType(TypedMappingHandler.class.getTypeParameters()[0]).getType();
+        return JsonUtils.readerFor(type instanceof TypeVariable ? Object.class : type);
+    }
+
+    private static Type entityType(MappingHandler handler) {
+        // 从 handler 实现类解析 MappingHandler<T> 的 T, 解析不出时按值的实际类型序列化
+        Type type = TypeToken.of(handler.getClass()).resolveType(MappingHandler.class.getTypeParameters()[0]).getType();
+        return type instanceof TypeVariable ? null : type;
+    }
+
+    @Override
+    public String toString() {
+        return path.toString() + (prefix ? " (prefix)" : "");
+    }
+}
@@ -0,0 +1,265 @@
+package io.san.server;
+
+import com.google.common.base.Preconditions;
+import io.san.server.exception.IllegalMethodNotAllowedException;
+import io.san.server.exception.IllegalPathDuplicatedException;
+import io.san.server.exception.IllegalPathNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 path 段组织的路由前缀树, 启动时构建, {@link #compile()} 之后只读。
+ * <p>
+ * 匹配优先级(确定性, 与注册顺序无关):
+ * <ol>
+ * <li>更长(更深)的匹配优先, 前缀匹配的深度为其 path 的段数; 例如 {@code /{x}/b} 与前缀 {@code /a} 都能匹配
+ * {@code /a/b} 时取前者</li>
+ * <li>同一层级: 静态段 &gt; {@code {variable}} 段</li>
+ * <li>同一节点: 完全匹配 &gt; 前缀匹配({@code equal = false})</li>
+ * </ol>
+ * 静态段忽略大小写, 空段和 query string 不参与匹配, 前缀匹配以段为边界。
+ * 命中时查找过程不分配对象。
+ */
+public class Router {
+
+    private static final Route[] EMPTY = new Route[0];
+
+    private final Node root = new Node();
+    private final List<Route> routes = new ArrayList<>();
+    private boolean compiled;
+
+    public void add(Route route) throws IllegalPathDuplicatedException {
+        Preconditions.checkState(!compiled, "Router has been compiled");
+        Node node = root;
+        for (String segment : Route.segments(route.getPath().getUri())) {
+            node = Route.isVariable(segment) ? node.variableChild() : node.staticChild(segment);
+        }
+        if (route.isPrefix()) {
+            node.prefix = append(node.prefix, route);
+        } else {
+            node.exact = append(node.exact, route);
+        }
+        routes.add(route);
+    }
+
+    public void compile() {
+        root.compile();
+        compiled = true;
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    public List<Route> routes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * @return 未命中时返回 null, 不区分 404 和 405
+     */
+    public Route find(String method, String uri) {
+        Preconditions.checkState(compiled, "Router has not been compiled");
+        int end = pathEnd(uri);
+        int start = skipSlash(uri, 0, end);
+        return search(root, method, uri, start, end, segmentCount(uri, start, end));
+    }
+
+    public Route match(String method, String uri) throws IllegalPathNotFoundException,
+            IllegalMethodNotAllowedException {
+        Route route = find(method, uri);
+        if (route != null) {
+            return route;
+        }
+        // 只在未命中时再走一遍, 区分 404 和 405
+        int end = pathEnd(uri);
+        int start = skipSlash(uri, 0, end);
+        if (search(root, null, uri, start, end, segmentCount(uri, start, end)) != null) {
+            throw new IllegalMethodNotAllowedException();
+        }
+        throw new IllegalPathNotFoundException();
+    }
+
+    /**
+     * 静态分支的结果已经匹配到最后一段时不再尝试变量分支, 否则取两个分支和本节点前缀匹配中最深的一个
+     *
+     * @param method   为 null 时匹配任意 method
+     * @param segments uri 的总段数
+     */
+    private static Route search(Node node, String method, String uri, int start, int end, int segments) {
+        if (start >= end) {
+            Route route = select(node.exact, method);
+            return route != null ? route : select(node.prefix, method);
+        }
+        int segmentEnd = segmentEnd(uri, start, end);
+        int next = skipSlash(uri, segmentEnd, end);
+
+        Route best = null;
+        Node child = node.find(uri, start, segmentEnd);
+        if (child != null) {
+            best = search(child, method, uri, next, end, segments);
+            if (best != null && best.depth() == segments) return best;
+        }
+        if (node.variable != null) {
+            best = deeper(best, search(node.variable, method, uri, next, end, segments));
+        }
+        return deeper(best, select(node.prefix, method));
+    }
+
+    /**
+     * 深度相同时保留先找到的(静态段先于变量段, 子节点先于本节点)
+     */
+    private static Route deeper(Route found, Route candidate) {
+        if (found == null) return candidate;
+        if (candidate == null) return found;
+        return candidate.depth() > found.depth() ? candidate : found;
+    }
+
+    private static Route select(Route[] routes, String method) {
+        if (routes.length == 0) return null;
+        if (method == null) return routes[0];
+        for (Route route : routes) {
+            if (route.getMethod().equalsIgnoreCase(method)) return route;
+        }
+        return null;
+    }
+
+    private static Route[] append(Route[] routes, Route route) throws IllegalPathDuplicatedException {
+        for (Route exist : routes) {
+            if (exist.getMethod().equals(route.getMethod())) {
+                throw new IllegalPathDuplicatedException();
+            }
+        }
+        Route[] result = Arrays.copyOf(routes, routes.length + 1);
+        result[routes.length] = route;
+        return result;
+    }
+
+    static int pathEnd(String uri) {
+        int length = uri.length();
+        for (int i = 0; i < length; i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') return i;
+        }
+        return length;
+    }
+
+    private static int segmentCount(String uri, int index, int end) {
+        int count = 0;
+        while (index < end) {
+            count++;
+            index = skipSlash(uri, segmentEnd(uri, index, end), end);
+        }
+        return count;
+    }
+
+    private static int segmentEnd(String uri, int index, int end) {
+        while (index < end && uri.charAt(index) != '/') index++;
+        return index;
+    }
+
+    private static int skipSlash(String uri, int index, int end) {
+        while (index < end && uri.charAt(index) == '/') index++;
+        return index;
+    }
+
+    /**
+     * 静态段忽略大小写的唯一折叠方式, 注册的 key、查找时的 hash 和比较都按字符使用它。
+     * 不用 String.toLowerCase: 它会改变部分字符的长度(例如 'İ'), 与按字符的 hash 和比较不一致
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static String fold(String segment) {
+        char[] chars = new char[segment.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(segment.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 与折叠后的 key 的 {@link String#hashCode()} 一致
+     */
+    private static int hash(String uri, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + fold(uri.charAt(i));
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Node {
+        private Map<String, Node> children = new LinkedHashMap<>();
+        private Node variable;
+        private Route[] exact = EMPTY;
+        private Route[] prefix = EMPTY;
+
+        // compile 之后的开放寻址表, 直接用 uri 的区间做 key, 避免 substring
+        private String[] keys;
+        private int[] hashes;
+        private Node[] nodes;
+        private int mask;
+
+        Node staticChild(String segment) {
+            return children.computeIfAbsent(fold(segment), key -> new Node());
+        }
+
+        Node variableChild() {
+            if (variable == null) variable = new Node();
+            return variable;
+        }
+
+        Node find(String uri, int start, int end) {
+            if (keys == null) return null;
+            int length = end - start;
+            int h = hash(uri, start, end);
+            for (int i = h & mask; keys[i] != null; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (hashes[i] == h && key.length() == length && matches(key, uri, start)) {
+                    return nodes[i];
+                }
+            }
+            return null;
+        }
+
+        private static boolean matches(String key, String uri, int start) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != fold(uri.charAt(start + i))) return false;
+            }
+            return true;
+        }
+
+        void compile() {
+            if (!children.isEmpty()) {
+                int capacity = Integer.highestOneBit(children.size() * 2 - 1) << 1;
+                keys = new String[capacity];
+                hashes = new int[capacity];
+                nodes = new Node[capacity];
+                mask = capacity - 1;
+                for (Map.Entry<String, Node> entry : children.entrySet()) {
+                    String key = entry.getKey();
+                    int h = spread(key.hashCode());
+                    int i = h & mask;
+                    while (keys[i] != null) i = (i + 1) & mask;
+                    keys[i] = key;
+                    hashes[i] = h;
+                    nodes[i] = entry.getValue();
+                    entry.getValue().compile();
+                }
+            }
+            if (variable != null) variable.compile();
+            children = null;
+        }
+    }
+}
@@ -1,42 +1,234 @@
 package io.san.server;
 
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Session {
+    /**
+     * 暂停读取的原因, 各自独立, 全部解除后才恢复读取
+     */
+    static final int PAUSE_PIPELINING = 1;
+    static final int PAUSE_UPLOAD = 1 << 1;
+    static final int PAUSE_CLOSING = 1 << 2;
+
     private final AtomicInteger requestCount;
     private long lastReqTime;
+    private int inFlight;
     private final long createTime;
     private final int maxRequest;
     private final int keepaliveTime;
-    private ConnectLimiter semaphore;
+    private ConnectLimiter limiter;
+    private InetAddress address;
+    private final ResponseSequencer sequencer = new ResponseSequencer();
+    /**
+     * HTTP/2 stream 所属连接的 Session
+     */
+    private Session parent;
+    /**
+     * 当前暂停读取的原因, PAUSE_* 的组合
+     */
+    private int readPauses;
+    /**
+     * 连接上的最后一个请求已读取, 之后已解码的请求直接丢弃
+     */
+    private boolean closing;
+    boolean dispatching;
+    /**
+     * 流式处理器按请求头匹配到的非流式路由, 聚合后的请求直接使用; 用 headers 对象确认是同一个请求
+     */
+    private HttpHeaders routedHeaders;
+    private Route routed;
+    /**
+     * 超出 pipelining 深度、等待分发的请求, 已 retain
+     */
+    private ArrayDeque<NettyHttpRequest> waiting;
 
     public Session(int maxRequest, int keepaliveTime) {
+        this(maxRequest, keepaliveTime, null);
+    }
+
+    private Session(int maxRequest, int keepaliveTime, Session parent) {
+        this.parent = parent;
         this.createTime = System.currentTimeMillis();
+        this.lastReqTime = this.createTime;
         this.requestCount = new AtomicInteger(0);
         this.maxRequest = maxRequest;
         this.keepaliveTime = keepaliveTime;
     }
 
 
-    public Session setLimit(ConnectLimiter semaphore) {
-        this.semaphore = semaphore;
+    /**
+     * 不按 IP 计数
+     *
+     * @deprecated 使用 {@link #setLimit(ConnectLimiter, InetAddress)}
+     */
+    @Deprecated
+    public Session setLimit(ConnectLimiter limiter) {
+        return setLimit(limiter, null);
+    }
+
+    public Session setLimit(ConnectLimiter limiter, InetAddress address) {
+        this.limiter = limiter;
+        this.address = address;
         return this;
     }
 
     public Session clearLimitRef() {
-        if (Objects.nonNull(this.semaphore)) {
-            this.semaphore.release();
-            this.semaphore = null;
+        if (Objects.nonNull(this.limiter)) {
+            this.limiter.release(this.address);
+            this.limiter = null;
         }
         return this;
     }
 
+    /**
+     * HTTP/2 的一个 stream, 请求计数和活跃时间同时计入当前连接
+     */
+    Session stream() {
+        return new Session(this.maxRequest, this.keepaliveTime, this);
+    }
+
+    /**
+     * stream 关闭时仍未响应的请求不再计入连接, 避免连接永远不空闲
+     */
+    void detach() {
+        if (Objects.nonNull(this.parent)) {
+            this.parent.inFlight -= Math.max(0, this.inFlight);
+            this.parent = null;
+        }
+    }
+
+    /**
+     * 只在 event loop 上调用; 第一个原因出现时关闭 autoRead
+     */
+    void pauseRead(Channel channel, int reason) {
+        if (this.readPauses == 0) {
+            channel.config().setAutoRead(false);
+        }
+        this.readPauses |= reason;
+    }
+
+    /**
+     * 只在 event loop 上调用; 解除 reason, 没有其他原因时恢复 autoRead
+     */
+    void resumeRead(Channel channel, int reason) {
+        if (this.readPauses == 0) {
+            return;
+        }
+        this.readPauses &= ~reason;
+        if (this.readPauses == 0) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    void routed(HttpRequest head, Route route) {
+        this.routedHeaders = head.headers();
+        this.routed = route;
+    }
+
+    /**
+     * @return request 的请求头已匹配到的路由, 没有时返回 null
+     */
+    Route takeRouted(HttpRequest request) {
+        Route route = this.routedHeaders == request.headers() ? this.routed : null;
+        this.routedHeaders = null;
+        this.routed = null;
+        return route;
+    }
+
+    boolean isClosing() {
+        return this.closing;
+    }
+
+    /**
+     * 读到请求并计数后调用, 决定响应写出后是否保持连接; 返回 false 时该请求是连接上的最后一个,
+     * 之后不再接受请求; 调用方在该请求的 body 读完后以 {@link #PAUSE_CLOSING} 暂停读取
+     */
+    boolean acceptKeepalive(boolean keepalive) {
+        if (isKeepalive(keepalive)) {
+            return true;
+        }
+        this.closing = true;
+        return false;
+    }
+
+    ResponseSequencer sequencer() {
+        return this.sequencer;
+    }
+
+    /**
+     * 已读取但尚未写出响应的请求数, 包括等待分发的
+     */
+    public int inFlight() {
+        return this.inFlight;
+    }
+
+    void waiting(NettyHttpRequest request) {
+        if (Objects.isNull(this.waiting)) {
+            this.waiting = new ArrayDeque<>();
+        }
+        this.waiting.add(request);
+    }
+
+    boolean hasWaiting() {
+        return Objects.nonNull(this.waiting) && !this.waiting.isEmpty();
+    }
+
+    int waitingCount() {
+        return Objects.isNull(this.waiting) ? 0 : this.waiting.size();
+    }
+
+    NettyHttpRequest nextWaiting() {
+        return Objects.isNull(this.waiting) ? null : this.waiting.poll();
+    }
+
+    void releaseWaiting() {
+        NettyHttpRequest request;
+        while (Objects.nonNull(request = nextWaiting())) {
+            request.release();
+        }
+    }
+
+    /**
+     * @return 请求序号, 从 1 开始, 响应按该序号依次写出
+     */
     public int incrementReq() {
+        if (Objects.nonNull(this.parent)) {
+            this.parent.incrementReq();
+        }
         this.lastReqTime = System.currentTimeMillis();
+        this.inFlight++;
         return this.requestCount.incrementAndGet();
     }
 
+    /**
+     * 响应已写出; 与 {@link #incrementReq()} 一样只在连接所属的 event loop 上调用
+     */
+    public void responded() {
+        if (Objects.nonNull(this.parent)) {
+            this.parent.responded();
+        }
+        this.lastReqTime = System.currentTimeMillis();
+        this.inFlight--;
+    }
+
+    public boolean isIdle(long now, long idleMillis) {
+        return this.inFlight <= 0 && now - this.lastReqTime > idleMillis;
+    }
+
+
+    /**
+     * HTTP/2 stream 按所属连接的请求数和存活时间判断
+     */
+    boolean isConnectionKeepalive() {
+        return Objects.isNull(this.parent) ? isKeepalive(true) : this.parent.isKeepalive(true);
+    }
 
     public boolean isKeepalive(boolean keepalive) {
 
@@ -0,0 +1,44 @@
+package io.san.server;
+
+/**
+ * 推送式流响应的写入端, 由 {@link StreamResponse#publish} 交给 handler, 可以在任意线程上使用,
+ * 但同一时刻只能有一个线程调用 {@link #send}。
+ * <p>
+ * 背压: {@link #isReady()} 为 false 时应暂停生产, 通过 {@link #onReady} 在连接重新可写时继续;
+ * 不检查直接 send 也可以, 但数据会堆积在内存中。
+ */
+public interface StreamEmitter {
+
+    /**
+     * 写出一项并立即 flush, 编码规则见 {@link StreamResponse}
+     *
+     * @return 连接已关闭或流已结束时返回 false, 数据被丢弃
+     */
+    boolean send(Object item);
+
+    /**
+     * 连接可写(发送缓冲未超过高水位)
+     */
+    boolean isReady();
+
+    /**
+     * 连接由不可写变为可写时回调一次, 在生产数据的执行器上执行; 注册时已可写则立即回调。
+     * 连接关闭时也会回调, 此时 send 返回 false
+     */
+    void onReady(Runnable callback);
+
+    /**
+     * 流结束之前连接关闭时回调, 用于取消订阅、释放资源
+     */
+    void onClose(Runnable callback);
+
+    /**
+     * 正常结束
+     */
+    void complete();
+
+    /**
+     * 异常结束; 响应头已经发出, 只能关闭连接, 客户端据此判断数据不完整
+     */
+    void fail(Throwable cause);
+}
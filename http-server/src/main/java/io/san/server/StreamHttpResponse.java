@@ -0,0 +1,368 @@
+package io.san.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link StreamResponse} 对应的响应, body 为空, 由 {@link ResponseSequencer} 在轮到它时调用 {@link #start} 开始写出,
+ * 结束之前同一连接上后面的响应暂存在 sequencer 中。
+ * <p>
+ * 背压: 生产只在连接可写时进行, 不可写时登记回调, HttpServerHandler 收到 channelWritabilityChanged 后
+ * 经 sequencer 调用 {@link #writabilityChanged()} 在生产线程上继续。
+ */
+final class StreamHttpResponse extends DefaultFullHttpResponse implements StreamEmitter {
+    private static final Logger log = LoggerFactory.getLogger(StreamHttpResponse.class);
+
+    /**
+     * 拉取式数据源合并写出的块大小, 减少跨线程的写任务和 chunk 数量
+     */
+    private static final int BATCH_SIZE = 8192;
+
+    private final StreamResponse source;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicBoolean resourceClosed = new AtomicBoolean();
+    private final AtomicReference<Runnable> readyCallback = new AtomicReference<>();
+    private final AtomicReference<Runnable> closeCallback = new AtomicReference<>();
+    private volatile boolean cancelled;
+    private volatile boolean started;
+    private volatile ChannelHandlerContext context;
+    private Executor executor;
+    private Runnable onFinish;
+    private boolean keepalive;
+    private Runnable streamed;
+
+    StreamHttpResponse(StreamResponse source) {
+        super(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER, NettyHttpResponse.newHeaders(),
+                EmptyHttpHeaders.INSTANCE);
+        this.source = source;
+    }
+
+    /**
+     * 生产数据的执行器, 为 null 时在连接的 event loop 上执行
+     */
+    void executor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 流结束(最后一块已写出)后在 event loop 上回调
+     */
+    void onFinish(Runnable onFinish) {
+        this.onFinish = onFinish;
+    }
+
+    /**
+     * 只在 event loop 上调用; 写出响应头(不 flush)并开始生产
+     *
+     * @param streamed 流正常结束后回调, sequencer 据此继续写出后面的响应
+     */
+    void start(ChannelHandlerContext context, boolean keepalive, Runnable streamed) {
+        this.context = context;
+        this.keepalive = keepalive;
+        this.streamed = streamed;
+        this.started = true;
+        HttpResponse head = new DefaultHttpResponse(protocolVersion(), status(), headers());
+        HttpUtil.setTransferEncodingChunked(head, true);
+        context.write(head);
+        if (Objects.nonNull(this.source.publisher)) {
+            execute(() -> {
+                try {
+                    this.source.publisher.accept(this);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            });
+        } else {
+            execute(this::pump);
+        }
+    }
+
+    /**
+     * 只在 event loop 上调用
+     */
+    void writabilityChanged() {
+        if (this.context.channel().isWritable()) {
+            fireReady();
+        }
+    }
+
+    /**
+     * 连接关闭, 只在 event loop 上调用
+     */
+    void cancel() {
+        if (!this.done.compareAndSet(false, true)) {
+            return;
+        }
+        this.cancelled = true;
+        Runnable callback = this.closeCallback.getAndSet(null);
+        if (Objects.nonNull(callback)) {
+            execute(callback);
+        }
+        fireReady();
+    }
+
+    @Override
+    public boolean send(Object item) {
+        if (this.done.get()) {
+            if (item instanceof ByteBuf) {
+                ((ByteBuf) item).release();
+            }
+            return false;
+        }
+        ByteBuf content;
+        if (!this.source.events && item instanceof ByteBuf) {
+            content = (ByteBuf) item;
+        } else if (!this.source.events && item instanceof byte[]) {
+            content = Unpooled.wrappedBuffer((byte[]) item);
+        } else {
+            content = this.context.alloc().buffer();
+            try {
+                encode(content, item);
+            } catch (RuntimeException e) {
+                content.release();
+                throw e;
+            }
+        }
+        this.context.writeAndFlush(new DefaultHttpContent(content));
+        return true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return !this.done.get() && this.context.channel().isWritable();
+    }
+
+    @Override
+    public void onReady(Runnable callback) {
+        this.readyCallback.set(callback);
+        // 登记前连接可能已经恢复可写或已关闭, 再检查一次, 避免错过通知
+        if (this.done.get() || this.context.channel().isWritable()) {
+            fireReady();
+        }
+    }
+
+    @Override
+    public void onClose(Runnable callback) {
+        this.closeCallback.set(callback);
+        if (this.cancelled) {
+            Runnable registered = this.closeCallback.getAndSet(null);
+            if (Objects.nonNull(registered)) {
+                execute(registered);
+            }
+        }
+    }
+
+    @Override
+    public void complete() {
+        if (this.done.compareAndSet(false, true)) {
+            onEventLoop(this::finish);
+        }
+    }
+
+    @Override
+    public void fail(Throwable cause) {
+        if (this.done.compareAndSet(false, true)) {
+            log.warn("Streaming response is aborted", cause);
+            this.context.close();
+        }
+    }
+
+    @Override
+    public boolean release() {
+        closeIfNotStarted();
+        return super.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        closeIfNotStarted();
+        return super.release(decrement);
+    }
+
+    /**
+     * 拉取式数据源: 连接可写时逐项编码, 攒够 {@link #BATCH_SIZE} 写出一块; 不可写时等待 {@link #onReady} 回调再继续
+     */
+    private void pump() {
+        Iterator<?> iterator = this.source.source;
+        ByteBuf batch = null;
+        try {
+            while (isReady() && iterator.hasNext()) {
+                if (Objects.isNull(batch)) {
+                    batch = this.context.alloc().buffer(BATCH_SIZE);
+                }
+                encode(batch, iterator.next());
+                if (batch.readableBytes() >= BATCH_SIZE) {
+                    this.context.writeAndFlush(new DefaultHttpContent(batch));
+                    batch = null;
+                }
+            }
+            if (Objects.nonNull(batch)) {
+                this.context.writeAndFlush(new DefaultHttpContent(batch));
+                batch = null;
+            }
+            if (!this.done.get()) {
+                if (iterator.hasNext()) {
+                    onReady(this::pump);
+                    return;
+                }
+                complete();
+            }
+        } catch (Exception e) {
+            if (Objects.nonNull(batch)) {
+                batch.release();
+            }
+            fail(e);
+        }
+        closeResource();
+    }
+
+    private void finish() {
+        ChannelFuture future = this.context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        if (!this.keepalive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+        this.streamed.run();
+        if (Objects.nonNull(this.onFinish)) {
+            this.onFinish.run();
+        }
+    }
+
+    private void fireReady() {
+        Runnable callback = this.readyCallback.getAndSet(null);
+        if (Objects.nonNull(callback)) {
+            execute(callback);
+        }
+    }
+
+    private void execute(Runnable task) {
+        Executor target = Objects.isNull(this.executor) ? this.context.executor() : this.executor;
+        try {
+            target.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 业务线程池已满或 event loop 已关闭, 流无法继续
+            fail(e);
+            closeResource();
+        }
+    }
+
+    private void onEventLoop(Runnable task) {
+        if (this.context.executor().inEventLoop()) {
+            task.run();
+            return;
+        }
+        try {
+            this.context.executor().execute(task);
+        } catch (RejectedExecutionException ignore) {
+            // channel 已关闭
+        }
+    }
+
+    private void closeIfNotStarted() {
+        if (!this.started) {
+            this.done.set(true);
+            closeResource();
+        }
+    }
+
+    private void closeResource() {
+        AutoCloseable resource = this.source.resource;
+        if (Objects.nonNull(resource) && this.resourceClosed.compareAndSet(false, true)) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.warn("Failed to close stream source", e);
+            }
+        }
+    }
+
+    private void encode(ByteBuf buffer, Object item) {
+        if (this.source.events) {
+            writeEvent(buffer, item);
+        } else if (item instanceof ByteBuf) {
+            ByteBuf bytes = (ByteBuf) item;
+            buffer.writeBytes(bytes);
+            bytes.release();
+        } else if (item instanceof byte[]) {
+            buffer.writeBytes((byte[]) item);
+        } else if (item instanceof CharSequence) {
+            ByteBufUtil.writeUtf8(buffer, (CharSequence) item);
+        } else {
+            JsonUtils.writeTo(buffer, item);
+            buffer.writeByte('\n');
+        }
+    }
+
+    private static void writeEvent(ByteBuf buffer, Object item) {
+        Object data = item;
+        if (item instanceof StreamResponse.Event) {
+            StreamResponse.Event event = (StreamResponse.Event) item;
+            if (Objects.nonNull(event.id)) {
+                writeField(buffer, "id: ", event.id);
+            }
+            if (Objects.nonNull(event.name)) {
+                writeField(buffer, "event: ", event.name);
+            }
+            data = event.data;
+        }
+        if (data instanceof ByteBuf) {
+            ByteBuf bytes = (ByteBuf) data;
+            data = bytes.toString(CharsetUtil.UTF_8);
+            bytes.release();
+        } else if (data instanceof byte[]) {
+            data = new String((byte[]) data, CharsetUtil.UTF_8);
+        }
+        if (data instanceof CharSequence) {
+            writeField(buffer, "data: ", (CharSequence) data);
+        } else {
+            // JSON 编码不含换行, 一行即可
+            ByteBufUtil.writeAscii(buffer, "data: ");
+            JsonUtils.writeTo(buffer, data);
+            buffer.writeByte('\n');
+        }
+        buffer.writeByte('\n');
+    }
+
+    /**
+     * 多行的值每行一个字段
+     */
+    private static void writeField(ByteBuf buffer, String field, CharSequence value) {
+        int length = value.length();
+        int start = 0;
+        while (true) {
+            int end = start;
+            while (end < length && value.charAt(end) != '\n') {
+                end++;
+            }
+            ByteBufUtil.writeAscii(buffer, field);
+            ByteBufUtil.writeUtf8(buffer, value.subSequence(start, end));
+            buffer.writeByte('\n');
+            if (end == length) {
+                return;
+            }
+            start = end + 1;
+        }
+    }
+}
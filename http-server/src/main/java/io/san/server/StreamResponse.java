@@ -0,0 +1,122 @@
+package io.san.server;
+
+import com.google.common.base.Preconditions;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * handler 返回的流式响应, 以 chunked 编码(HTTP/2 为 DATA 帧)逐项写出, 不把全部结果拼成一个 body。
+ * <p>
+ * 两种数据源:
+ * <ul>
+ * <li>{@link #of(Iterator)}: 拉取式, 连接可写时才取下一项, 不可写时暂停, 重新可写后继续;
+ * 多项合并成 8KB 左右的块写出, 实时推送的场景用 publish</li>
+ * <li>{@link #publish(Consumer)}: 推送式, handler 通过 {@link StreamEmitter} 写入, 自行根据 isReady 控制生产</li>
+ * </ul>
+ * 数据在路由的执行线程上生产(INLINE 时在 IO 线程上, 不能阻塞)。
+ * <p>
+ * 每项的编码: ByteBuf / byte[] / CharSequence 原样写出, 其他对象编码为一行 JSON;
+ * {@link #events()} 时每项为一个 Server-Sent Event, 可用 {@link Event} 指定 id 和事件名。
+ */
+public class StreamResponse {
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String EVENT_STREAM = "text/event-stream";
+
+    final Iterator<?> source;
+    final Consumer<StreamEmitter> publisher;
+    final AutoCloseable resource;
+    boolean events;
+    private String contentType;
+
+    private StreamResponse(Iterator<?> source, Consumer<StreamEmitter> publisher, AutoCloseable resource) {
+        this.source = source;
+        this.publisher = publisher;
+        this.resource = resource;
+    }
+
+    public static StreamResponse of(Iterator<?> source) {
+        Preconditions.checkNotNull(source, "source can not be null");
+        return new StreamResponse(source, null, source instanceof AutoCloseable ? (AutoCloseable) source : null);
+    }
+
+    /**
+     * 流结束或连接断开时关闭 stream
+     */
+    public static StreamResponse of(Stream<?> stream) {
+        Preconditions.checkNotNull(stream, "stream can not be null");
+        return new StreamResponse(stream.iterator(), null, stream);
+    }
+
+    /**
+     * publisher 在响应头写出后执行, 必须最终调用 {@link StreamEmitter#complete()} 或 {@link StreamEmitter#fail}
+     */
+    public static StreamResponse publish(Consumer<StreamEmitter> publisher) {
+        Preconditions.checkNotNull(publisher, "publisher can not be null");
+        return new StreamResponse(null, publisher, null);
+    }
+
+    /**
+     * 以 text/event-stream(SSE) 格式写出
+     */
+    public StreamResponse events() {
+        this.events = true;
+        return this;
+    }
+
+    /**
+     * 默认 application/x-ndjson, SSE 固定为 text/event-stream
+     */
+    public StreamResponse contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    FullHttpResponse toResponse() {
+        StreamHttpResponse response = new StreamHttpResponse(this);
+        HttpHeaders headers = response.headers();
+        if (this.events) {
+            headers.set(HttpHeaderNames.CONTENT_TYPE, EVENT_STREAM);
+            headers.set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE);
+        } else {
+            headers.set(HttpHeaderNames.CONTENT_TYPE, Objects.isNull(this.contentType) ? NDJSON : this.contentType);
+        }
+        return response;
+    }
+
+    /**
+     * 带 id 和事件名的 SSE 事件
+     */
+    public static final class Event {
+        final Object data;
+        String id;
+        String name;
+
+        private Event(Object data) {
+            this.data = data;
+        }
+
+        public static Event of(Object data) {
+            return new Event(data);
+        }
+
+        /**
+         * 客户端重连时通过 Last-Event-ID 带回
+         */
+        public Event id(String id) {
+            this.id = id;
+            return this;
+        }
+
+        public Event name(String name) {
+            this.name = name;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.san.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 流式接收请求 body 的 handler, 对应路由的请求不经过 HttpObjectAggregator, 也不受其大小限制。
+ * <p>
+ * 回调按顺序执行: {@link #onStart} → 若干次 {@link #onContent} → {@link #handle}, 执行线程与普通路由相同
+ * (INLINE 时在 IO 线程上)。处理分片期间 server 会暂停读取该连接(autoRead), 以此对客户端形成背压。
+ * {@link #handle} 时 {@link NettyHttpRequest#content()} 为空。
+ */
+public interface StreamingMappingHandler<T> extends MappingHandler<T> {
+
+    /**
+     * 收到请求头, body 尚未到达
+     */
+    default void onStart(NettyHttpRequest request) throws Exception {
+    }
+
+    /**
+     * 一个 body 分片, chunk 只在本次调用期间有效; 需要保留时自行 retain
+     */
+    void onContent(NettyHttpRequest request, ByteBuf chunk) throws Exception;
+
+    /**
+     * body 接收完成之前连接断开, 或 onStart/onContent 抛出异常
+     */
+    default void onAbort(NettyHttpRequest request, Throwable cause) {
+    }
+}
@@ -6,6 +6,6 @@ public class SystemUtil {
 
 
     public static boolean isLinux(){
-        return !os.contains("windows");
+        return os.contains("linux");
     }
 }
@@ -0,0 +1,137 @@
+package io.san.server;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * IO 传输层。EventLoopGroup 与 ServerChannel 必须来自同一种 transport。
+ * <p>
+ * io_uring 需要使用 {@code -P io_uring} 构建, 把 netty-incubator-transport-native-io_uring 打进 classpath;
+ * 这里通过反射访问, 默认构建不依赖它。
+ */
+public enum Transport {
+    NIO(null) {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        EventLoopGroup newGroup(int threads, ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannel() {
+            return NioServerSocketChannel.class;
+        }
+    },
+    EPOLL(EpollChannelOption.class.getName()) {
+        @Override
+        public boolean isAvailable() {
+            return SystemUtil.isLinux() && Epoll.isAvailable();
+        }
+
+        @Override
+        EventLoopGroup newGroup(int threads, ThreadFactory threadFactory) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannel() {
+            return EpollServerSocketChannel.class;
+        }
+    },
+    IO_URING("io.netty.incubator.channel.uring.IOUringChannelOption") {
+        private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+        @Override
+        public boolean isAvailable() {
+            if (!SystemUtil.isLinux()) {
+                return false;
+            }
+            try {
+                return (Boolean) Class.forName(PACKAGE + "IOUring").getMethod("isAvailable").invoke(null);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return false;
+            }
+        }
+
+        @Override
+        EventLoopGroup newGroup(int threads, ThreadFactory threadFactory) {
+            try {
+                return (EventLoopGroup) Class.forName(PACKAGE + "IOUringEventLoopGroup")
+                        .getConstructor(int.class, ThreadFactory.class).newInstance(threads, threadFactory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("io_uring transport is not available", e);
+            }
+        }
+
+        @Override
+        Class<? extends ServerChannel> serverChannel() {
+            try {
+                return Class.forName(PACKAGE + "IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("io_uring transport is not available", e);
+            }
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(Transport.class);
+
+    private final String optionClass;
+
+    Transport(String optionClass) {
+        this.optionClass = optionClass;
+    }
+
+    public abstract boolean isAvailable();
+
+    abstract EventLoopGroup newGroup(int threads, ThreadFactory threadFactory);
+
+    abstract Class<? extends ServerChannel> serverChannel();
+
+    /**
+     * transport 专有的 ChannelOption(SO_REUSEPORT / TCP_FASTOPEN / TCP_DEFER_ACCEPT 等), 不支持时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    <T> ChannelOption<T> option(String name) {
+        if (Objects.isNull(this.optionClass)) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName(this.optionClass);
+            return (ChannelOption<T>) type.getField(name).get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param preferred 为 null 时自动选择: 可用时 epoll, 否则 NIO
+     */
+    static Transport select(Transport preferred) {
+        if (Objects.nonNull(preferred) && preferred.isAvailable()) {
+            return preferred;
+        }
+        Transport fallback = EPOLL.isAvailable() ? EPOLL : NIO;
+        if (Objects.nonNull(preferred)) {
+            log.warn("Transport {} is not available, fall back to {}", preferred, fallback);
+        } else if (fallback == NIO && SystemUtil.isLinux()) {
+            log.info("Native epoll is not available, use NIO: {}", String.valueOf(Epoll.unavailabilityCause()));
+        }
+        return fallback;
+    }
+}
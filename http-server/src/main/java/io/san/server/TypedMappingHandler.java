@@ -0,0 +1,38 @@
+package io.san.server;
+
+import io.san.Response;
+import io.san.server.exception.IllegalRequestBodyException;
+
+/**
+ * 声明请求 body 类型的 handler。路由注册时按 Q 预先构建 ObjectReader,
+ * 请求到达后直接从聚合的 ByteBuf 解析 JSON 再传入, 不经过 String;
+ * body 不是合法 JSON 或与 Q 不匹配时返回 400, 不调用 handler。body 为空时 body 参数为 null。
+ *
+ * @param <Q> 请求 body 类型
+ * @param <T> 返回类型
+ */
+public interface TypedMappingHandler<Q, T> extends MappingHandler<T> {
+
+    T handle(NettyHttpRequest request, Q body);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    default T handle(NettyHttpRequest request) {
+        try {
+            return handle(request, (Q) request.readBody());
+        } catch (IllegalRequestBodyException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    default Response<T> request(NettyHttpRequest request, Q body) {
+
+        try {
+            T response = handle(request, body);
+            return Response.ok(response);
+        } catch (Exception e) {
+            return Response.fail(e.getMessage());
+        }
+
+    }
+}
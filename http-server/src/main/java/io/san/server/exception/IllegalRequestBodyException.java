@@ -0,0 +1,31 @@
+/**
+ * Copyright 2013-2033 Xia Jun(3979434@qq.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ***************************************************************************************
+ *                                                                                     *
+ *                        Website : http://www.farsunset.com                           *
+ *                                                                                     *
+ ***************************************************************************************
+ */
+package io.san.server.exception;
+
+/**
+ * 请求 body 无法解析为 handler 声明的类型, 返回 400
+ */
+public class IllegalRequestBodyException extends Exception {
+    public IllegalRequestBodyException(Throwable cause) {
+        super("BAD REQUEST BODY: " + cause.getMessage(), cause);
+    }
+}
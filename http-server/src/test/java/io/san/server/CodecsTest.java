@@ -0,0 +1,53 @@
+package io.san.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按 Content-Type / Accept 协商编码格式
+ */
+class CodecsTest {
+    private final Codecs codecs = new Codecs(new Codec[]{Codec.SMILE, Codec.CBOR});
+
+    @Test
+    void acceptPicksHighestQuality() {
+        assertSame(Codec.CBOR, this.codecs.forAccept("application/json;q=0.5, application/cbor"));
+        assertSame(Codec.SMILE, this.codecs.forAccept("application/cbor;q=0.2,application/x-jackson-smile;q=0.8"));
+        assertSame(Codec.JSON, this.codecs.forAccept("application/cbor;q=0.2, application/json"));
+    }
+
+    @Test
+    void acceptTiesKeepTheFirst() {
+        assertSame(Codec.CBOR, this.codecs.forAccept("application/cbor, application/x-jackson-smile"));
+        assertSame(Codec.SMILE, this.codecs.forAccept("application/x-jackson-smile;q=0.5, application/cbor;q=0.5"));
+    }
+
+    @Test
+    void acceptFallsBackToJson() {
+        assertSame(Codec.JSON, this.codecs.forAccept(null));
+        assertSame(Codec.JSON, this.codecs.forAccept("*/*"));
+        assertSame(Codec.JSON, this.codecs.forAccept("application/*"));
+        assertSame(Codec.JSON, this.codecs.forAccept("text/html, application/xml"));
+        assertSame(Codec.JSON, this.codecs.forAccept("application/cbor;q=0"));
+        assertSame(Codec.JSON, this.codecs.forAccept("application/cbor;q=abc"));
+        assertSame(Codec.CBOR, this.codecs.forAccept("*/*;q=0.1, application/cbor"));
+    }
+
+    @Test
+    void contentTypeIgnoresParametersAndCase() {
+        assertSame(Codec.CBOR, this.codecs.forContentType("Application/CBOR; charset=binary"));
+        assertSame(Codec.SMILE, this.codecs.forContentType("application/x-jackson-smile"));
+        assertSame(Codec.JSON, this.codecs.forContentType("application/json; charset=utf-8"));
+        assertSame(Codec.JSON, this.codecs.forContentType("text/plain"));
+        assertSame(Codec.JSON, this.codecs.forContentType(null));
+    }
+
+    @Test
+    void jsonOnlyDoesNotNegotiate() {
+        assertFalse(Codecs.JSON_ONLY.isNegotiable());
+        assertSame(Codec.JSON, Codecs.JSON_ONLY.forAccept("application/cbor"));
+        assertSame(Codec.JSON, Codecs.JSON_ONLY.forContentType("application/cbor"));
+        assertTrue(this.codecs.isNegotiable());
+    }
+}
@@ -0,0 +1,133 @@
+package io.san.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import io.netty.util.CharsetUtil;
+import io.san.DefaultDispatcher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在 EmbeddedChannel 上驱动完整的 server pipeline, 不绑定端口; 与业务进程一样由 Spring 扫描 {@link RestApi} 注册路由。
+ * 响应经 HttpResponseDecoder 解码后按写出顺序返回, 头与写出时一致。
+ */
+final class EmbeddedServer implements AutoCloseable {
+    private final HttpServer server;
+    private final AnnotationConfigApplicationContext context;
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    private EmbeddedServer(HttpServer server, AnnotationConfigApplicationContext context) {
+        this.server = server;
+        this.context = context;
+    }
+
+    /**
+     * @param builder  除 dispatcher 外的配置
+     * @param handlers 标注了 {@link RestApi} 的 handler 类
+     */
+    static EmbeddedServer start(HttpServer.Builder builder, Class<?>... handlers) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.register(DefaultDispatcher.class);
+        context.register(handlers);
+        context.refresh();
+        HttpServer server = builder.dispatcher(context.getBean(DefaultDispatcher.class)).idleTime(0).build();
+        server.prepare();
+        return new EmbeddedServer(server, context);
+    }
+
+    /**
+     * 新建一个连接
+     */
+    @SuppressWarnings("unchecked")
+    EmbeddedChannel connect() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(ChannelKey.CONNECT_SESSION).set(this.server.newSession());
+        this.server.initChannel(channel);
+        this.channels.add(channel);
+        return channel;
+    }
+
+    static void send(EmbeddedChannel channel, String... requests) {
+        StringBuilder text = new StringBuilder();
+        for (String request : requests) {
+            text.append(request);
+        }
+        channel.writeInbound(Unpooled.copiedBuffer(text, CharsetUtil.UTF_8));
+    }
+
+    /**
+     * 执行 channel event loop 上排队的任务后, 取出并解码已写出的响应; 调用方负责释放
+     */
+    static List<FullHttpResponse> responses(EmbeddedChannel channel) {
+        channel.runPendingTasks();
+        EmbeddedChannel decoder = new EmbeddedChannel(new HttpResponseDecoder(), new HttpObjectAggregator(1 << 20) {
+            @Override
+            protected void finishAggregation(FullHttpMessage aggregated) {
+                // 保留响应原本的头, 不补 Content-Length
+            }
+        });
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            if (message instanceof ByteBuf) {
+                decoder.writeInbound(message);
+            }
+        }
+        decoder.finish();
+        List<FullHttpResponse> responses = new ArrayList<>();
+        FullHttpResponse response;
+        while ((response = decoder.readInbound()) != null) {
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    static String get(String uri, String... headers) {
+        return request("GET", uri, "", headers);
+    }
+
+    static String post(String uri, String body, String... headers) {
+        return request("POST", uri, body, headers);
+    }
+
+    /**
+     * keep-alive 请求; headers 为 "Name: value" 形式
+     */
+    static String request(String method, String uri, String body, String... headers) {
+        StringBuilder text = new StringBuilder(method).append(' ').append(uri).append(" HTTP/1.1\r\n")
+                .append("Host: localhost\r\n")
+                .append("Connection: keep-alive\r\n");
+        for (String header : headers) {
+            text.append(header).append("\r\n");
+        }
+        if (!body.isEmpty()) {
+            text.append("Content-Type: application/json\r\n")
+                    .append("Content-Length: ").append(body.getBytes(CharsetUtil.UTF_8).length).append("\r\n");
+        }
+        return text.append("\r\n").append(body).toString();
+    }
+
+    static String body(FullHttpResponse response) {
+        return response.content().toString(CharsetUtil.UTF_8);
+    }
+
+    static void release(List<FullHttpResponse> responses) {
+        for (FullHttpResponse response : responses) {
+            response.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (EmbeddedChannel channel : this.channels) {
+            channel.finishAndReleaseAll();
+        }
+        this.context.close();
+    }
+}
@@ -0,0 +1,131 @@
+package io.san.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.List;
+
+import static io.san.server.EmbeddedServer.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文件响应的 Range、304 和 416
+ */
+class FileResponseTest {
+    private static final String CONTENT = "0123456789";
+    private static File file;
+    private static EmbeddedServer server;
+
+    @RestApi(path = "/file")
+    public static class Download implements MappingHandler<FileResponse> {
+        @Override
+        public FileResponse handle(NettyHttpRequest request) {
+            return FileResponse.of(file).contentType("text/plain");
+        }
+    }
+
+    @RestApi(path = "/mapped")
+    public static class Mapped implements MappingHandler<FileResponse> {
+        @Override
+        public FileResponse handle(NettyHttpRequest request) {
+            return FileResponse.of(file).contentType("text/plain").mmap(true);
+        }
+    }
+
+    @BeforeAll
+    static void start() throws IOException {
+        file = File.createTempFile("file-response", ".txt");
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.US_ASCII));
+        server = EmbeddedServer.start(HttpServer.builder(), Download.class, Mapped.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+        file.delete();
+    }
+
+    private static FullHttpResponse exchange(String request) {
+        EmbeddedChannel channel = server.connect();
+        send(channel, request);
+        List<FullHttpResponse> responses = responses(channel);
+        assertEquals(1, responses.size());
+        return responses.get(0);
+    }
+
+    @Test
+    void fullContent() {
+        FullHttpResponse response = exchange(get("/file"));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(CONTENT, body(response));
+        assertEquals("10", response.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+        assertEquals("bytes", response.headers().get(HttpHeaderNames.ACCEPT_RANGES));
+        response.release();
+    }
+
+    @Test
+    void notModifiedHasNoContentLength() {
+        String since = DateFormatter.format(new Date(file.lastModified()));
+        FullHttpResponse response = exchange(get("/file", "If-Modified-Since: " + since));
+        assertEquals(HttpResponseStatus.NOT_MODIFIED, response.status());
+        assertFalse(response.headers().contains(HttpHeaderNames.CONTENT_LENGTH));
+        assertFalse(response.headers().contains(HttpHeaderNames.CONTENT_TYPE));
+        assertEquals(since, response.headers().get(HttpHeaderNames.LAST_MODIFIED));
+        assertEquals(0, response.content().readableBytes());
+        response.release();
+    }
+
+    @Test
+    void modifiedSinceEarlierDate() {
+        String since = DateFormatter.format(new Date(file.lastModified() - 60_000));
+        FullHttpResponse response = exchange(get("/file", "If-Modified-Since: " + since));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(CONTENT, body(response));
+        response.release();
+    }
+
+    @Test
+    void range() {
+        FullHttpResponse response = exchange(get("/file", "Range: bytes=2-5"));
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("2345", body(response));
+        assertEquals("bytes 2-5/10", response.headers().get(HttpHeaderNames.CONTENT_RANGE));
+        response.release();
+    }
+
+    @Test
+    void suffixRangeOfMappedFile() {
+        FullHttpResponse response = exchange(get("/mapped", "Range: bytes=-3"));
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("789", body(response));
+        assertEquals("bytes 7-9/10", response.headers().get(HttpHeaderNames.CONTENT_RANGE));
+        response.release();
+    }
+
+    @Test
+    void unsatisfiableRange() {
+        FullHttpResponse response = exchange(get("/file", "Range: bytes=10-"));
+        assertEquals(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.status());
+        assertEquals("bytes */10", response.headers().get(HttpHeaderNames.CONTENT_RANGE));
+        response.release();
+    }
+
+    @Test
+    void multipleRangesReturnFullContent() {
+        FullHttpResponse response = exchange(get("/file", "Range: bytes=0-1,4-5"));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(CONTENT, body(response));
+        response.release();
+    }
+}
@@ -0,0 +1,55 @@
+package io.san.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 任务先攒起来, 由测试决定何时、按什么顺序执行
+ */
+final class ManualExecutor implements Executor {
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private boolean rejecting;
+
+    @Override
+    public void execute(Runnable command) {
+        if (this.rejecting) {
+            throw new RejectedExecutionException();
+        }
+        this.tasks.add(command);
+    }
+
+    /**
+     * 模拟线程池已满
+     */
+    void rejecting(boolean rejecting) {
+        this.rejecting = rejecting;
+    }
+
+    int size() {
+        return this.tasks.size();
+    }
+
+    void runNext() {
+        this.tasks.poll().run();
+    }
+
+    /**
+     * 执行到队列为空, 包括执行期间提交的任务
+     */
+    void runAll() {
+        while (!this.tasks.isEmpty()) {
+            runNext();
+        }
+    }
+
+    /**
+     * 从最后提交的开始执行当前已有的任务
+     */
+    void runReversed() {
+        while (!this.tasks.isEmpty()) {
+            this.tasks.pollLast().run();
+        }
+    }
+}
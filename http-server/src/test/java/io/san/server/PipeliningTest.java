@@ -0,0 +1,101 @@
+package io.san.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.san.server.EmbeddedServer.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * pipelining 的响应顺序, 以及 maxRequest 在读取请求时决定的连接关闭
+ */
+class PipeliningTest {
+    private static final AtomicInteger calls = new AtomicInteger();
+
+    @RestApi(path = "/count", method = "POST")
+    public static class Count implements MappingHandler<Integer> {
+        @Override
+        public Integer handle(NettyHttpRequest request) {
+            return calls.incrementAndGet();
+        }
+    }
+
+    @RestApi(path = "/manual/{n}", executor = "manual")
+    public static class Manual implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            return request.getStringPathValue("n");
+        }
+    }
+
+    private final ManualExecutor executor = new ManualExecutor();
+
+    @BeforeEach
+    void reset() {
+        calls.set(0);
+    }
+
+    private EmbeddedServer start(int maxRequest) {
+        return EmbeddedServer.start(HttpServer.builder().maxRequest(maxRequest).executor("manual", this.executor),
+                Count.class, Manual.class);
+    }
+
+    @Test
+    void responsesFollowRequestOrder() {
+        try (EmbeddedServer server = start(1000)) {
+            EmbeddedChannel channel = server.connect();
+            send(channel, get("/manual/1"), get("/manual/2"), get("/manual/3"));
+            assertTrue(responses(channel).isEmpty());
+
+            this.executor.runReversed();
+            List<FullHttpResponse> responses = responses(channel);
+            assertEquals(3, responses.size());
+            for (int i = 0; i < 3; i++) {
+                assertTrue(body(responses.get(i)).contains(String.valueOf(i + 1)), body(responses.get(i)));
+                assertFalse(responses.get(i).headers().contains(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE, true));
+            }
+            assertTrue(channel.isOpen());
+            release(responses);
+        }
+    }
+
+    @Test
+    void requestsBeyondMaxRequestAreNotExecuted() {
+        try (EmbeddedServer server = start(3)) {
+            EmbeddedChannel channel = server.connect();
+            send(channel, post("/count", "{}"), post("/count", "{}"), post("/count", "{}"),
+                    post("/count", "{}"), post("/count", "{}"));
+
+            List<FullHttpResponse> responses = responses(channel);
+            assertEquals(3, calls.get());
+            assertEquals(3, responses.size());
+            assertFalse(responses.get(1).headers().contains(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE, true));
+            assertTrue(responses.get(2).headers().contains(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE, true));
+            assertFalse(channel.isOpen());
+            release(responses);
+        }
+    }
+
+    @Test
+    void readAheadDoesNotCloseEarly() {
+        try (EmbeddedServer server = start(2)) {
+            EmbeddedChannel channel = server.connect();
+            // 两个请求都已读取, 第一个响应写出时连接的请求数已达到 maxRequest
+            send(channel, get("/manual/1"), get("/manual/2"));
+            this.executor.runReversed();
+
+            List<FullHttpResponse> responses = responses(channel);
+            assertEquals(2, responses.size());
+            assertFalse(responses.get(0).headers().contains(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE, true));
+            assertTrue(responses.get(1).headers().contains(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE, true));
+            release(responses);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.san.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.san.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.san.server.EmbeddedServer.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 响应缓存: 并发未命中只执行一次 handler、ETag 协商和不缓存的结果
+ */
+class ResponseCacheTest {
+    private static final AtomicInteger calls = new AtomicInteger();
+    /**
+     * handler 执行期间调用, 模拟其他请求在加载过程中到达
+     */
+    private static Runnable during;
+
+    @RestApi(path = "/cached", cacheSeconds = 60, cacheHeaders = "Accept-Language", executor = "manual")
+    public static class Cached implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            int call = calls.incrementAndGet();
+            if (call == 1 && during != null) {
+                during.run();
+            }
+            return "call-" + call;
+        }
+    }
+
+    @RestApi(path = "/failing", cacheSeconds = 60)
+    public static class Failing implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            calls.incrementAndGet();
+            throw new IllegalStateException("failed");
+        }
+
+        /**
+         * 异常交给 dispatcher, 返回 500
+         */
+        @Override
+        public Response<String> request(NettyHttpRequest request) {
+            return Response.ok(handle(request));
+        }
+    }
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private EmbeddedServer server;
+
+    @BeforeEach
+    void start() {
+        calls.set(0);
+        during = null;
+        // 开启 Smile 后响应带 Vary: Accept, 用于确认 304 保留了它
+        this.server = EmbeddedServer.start(HttpServer.builder().codecs(Codec.SMILE).executor("manual", this.executor),
+                Cached.class, Failing.class);
+    }
+
+    @AfterEach
+    void stop() {
+        this.server.close();
+    }
+
+    private FullHttpResponse exchange(String request) {
+        EmbeddedChannel channel = this.server.connect();
+        send(channel, request);
+        this.executor.runAll();
+        List<FullHttpResponse> responses = responses(channel);
+        assertEquals(1, responses.size());
+        return responses.get(0);
+    }
+
+    @Test
+    void concurrentMissesRunHandlerOnce() {
+        EmbeddedChannel first = this.server.connect();
+        EmbeddedChannel second = this.server.connect();
+        send(first, get("/cached"));
+        send(second, get("/cached"));
+        assertEquals(2, this.executor.size());
+        // 第一个请求加载期间执行第二个请求: 它不能阻塞, 加载结束后在自己的 event loop 上重新分发
+        during = this.executor::runNext;
+        this.executor.runNext();
+        assertEquals(0, this.executor.size());
+
+        second.runPendingTasks();
+        this.executor.runAll();
+        List<FullHttpResponse> firstResponses = responses(first);
+        List<FullHttpResponse> secondResponses = responses(second);
+        assertEquals(1, calls.get());
+        assertEquals(1, firstResponses.size());
+        assertEquals(1, secondResponses.size());
+        assertEquals(body(firstResponses.get(0)), body(secondResponses.get(0)));
+        assertEquals(firstResponses.get(0).headers().get(HttpHeaderNames.ETAG),
+                secondResponses.get(0).headers().get(HttpHeaderNames.ETAG));
+        release(firstResponses);
+        release(secondResponses);
+    }
+
+    @Test
+    void ifNoneMatchReturnsNotModifiedWithOtherHeaders() {
+        FullHttpResponse ok = exchange(get("/cached"));
+        String etag = ok.headers().get(HttpHeaderNames.ETAG);
+        assertNotNull(etag);
+        assertTrue(ok.headers().contains(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT, true));
+        assertNotNull(ok.headers().get(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN));
+
+        for (String ifNoneMatch : new String[]{etag, "W/" + etag, "\"other\", " + etag, "*"}) {
+            FullHttpResponse notModified = exchange(get("/cached", "If-None-Match: " + ifNoneMatch));
+            assertEquals(HttpResponseStatus.NOT_MODIFIED, notModified.status(), ifNoneMatch);
+            assertEquals(etag, notModified.headers().get(HttpHeaderNames.ETAG));
+            assertTrue(notModified.headers().contains(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT, true));
+            assertEquals(ok.headers().get(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN),
+                    notModified.headers().get(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN));
+            assertFalse(notModified.headers().contains(HttpHeaderNames.CONTENT_LENGTH));
+            assertFalse(notModified.headers().contains(HttpHeaderNames.CONTENT_TYPE));
+            assertEquals(0, notModified.content().readableBytes());
+            notModified.release();
+        }
+
+        FullHttpResponse changed = exchange(get("/cached", "If-None-Match: \"other\""));
+        assertEquals(HttpResponseStatus.OK, changed.status());
+        assertEquals(body(ok), body(changed));
+        assertEquals(1, calls.get());
+        ok.release();
+        changed.release();
+    }
+
+    @Test
+    void cacheHeadersArePartOfTheKey() {
+        FullHttpResponse en = exchange(get("/cached", "Accept-Language: en"));
+        FullHttpResponse zh = exchange(get("/cached", "Accept-Language: zh"));
+        FullHttpResponse enAgain = exchange(get("/cached", "Accept-Language: en"));
+        assertEquals(2, calls.get());
+        assertNotEquals(body(en), body(zh));
+        assertEquals(body(en), body(enAgain));
+        en.release();
+        zh.release();
+        enAgain.release();
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        FullHttpResponse first = exchange(get("/failing"));
+        FullHttpResponse second = exchange(get("/failing"));
+        assertNotEquals(HttpResponseStatus.OK, first.status());
+        assertNotEquals(HttpResponseStatus.OK, second.status());
+        assertFalse(second.headers().contains(HttpHeaderNames.ETAG));
+        assertEquals(2, calls.get());
+        first.release();
+        second.release();
+    }
+}
@@ -0,0 +1,173 @@
+package io.san.server;
+
+import io.san.server.exception.IllegalMethodNotAllowedException;
+import io.san.server.exception.IllegalPathDuplicatedException;
+import io.san.server.exception.IllegalPathNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.lang.annotation.Annotation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 路由前缀树的匹配优先级, 与注册顺序无关
+ */
+class RouterTest {
+
+    private static class Handler implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            return "";
+        }
+    }
+
+    private static Route route(String method, String path, boolean equal) {
+        return new Route(new RestApi() {
+            @Override
+            public String path() {
+                return path;
+            }
+
+            @Override
+            public String method() {
+                return method;
+            }
+
+            @Override
+            public boolean equal() {
+                return equal;
+            }
+
+            @Override
+            public String executor() {
+                return "";
+            }
+
+            @Override
+            public boolean precompress() {
+                return false;
+            }
+
+            @Override
+            public int cacheSeconds() {
+                return 0;
+            }
+
+            @Override
+            public String[] cacheHeaders() {
+                return new String[0];
+            }
+
+            @Override
+            public long cacheMaxBytes() {
+                return 0;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return RestApi.class;
+            }
+        }, new Handler());
+    }
+
+    private static Route get(String path) {
+        return route("GET", path, true);
+    }
+
+    private static Route prefix(String path) {
+        return route("GET", path, false);
+    }
+
+    private static Router router(Route... routes) throws IllegalPathDuplicatedException {
+        Router router = new Router();
+        for (Route route : routes) {
+            router.add(route);
+        }
+        router.compile();
+        return router;
+    }
+
+    @Test
+    void staticSegmentBeatsVariable() throws Exception {
+        Route variable = get("/users/{id}");
+        Route me = get("/users/me");
+        for (Router router : new Router[]{router(variable, me), router(me, variable)}) {
+            assertSame(me, router.find("GET", "/users/me"));
+            assertSame(variable, router.find("GET", "/users/42"));
+        }
+    }
+
+    @Test
+    void deeperMatchAcrossStaticAndVariableBranches() throws Exception {
+        Route variable = get("/{x}/b");
+        Route prefix = prefix("/a");
+        Router router = router(prefix, variable);
+        assertSame(variable, router.find("GET", "/a/b"));
+        assertSame(prefix, router.find("GET", "/a/c"));
+        assertNull(router.find("GET", "/c/d"));
+    }
+
+    @Test
+    void staticBranchFallsBackToVariableBranch() throws Exception {
+        Route deadEnd = get("/a/x");
+        Route variable = get("/{x}/b");
+        Router router = router(deadEnd, variable);
+        assertSame(variable, router.find("GET", "/a/b"));
+        assertSame(deadEnd, router.find("GET", "/a/x"));
+    }
+
+    @Test
+    void exactBeatsPrefixAtTheSameNode() throws Exception {
+        Route exact = get("/files");
+        Route prefix = prefix("/files");
+        Router router = router(prefix, exact);
+        assertSame(exact, router.find("GET", "/files"));
+        assertSame(prefix, router.find("GET", "/files/a/b"));
+    }
+
+    @Test
+    void prefixMatchesOnSegmentBoundary() throws Exception {
+        Route prefix = prefix("/static");
+        Router router = router(prefix);
+        assertSame(prefix, router.find("GET", "/static/app.js"));
+        assertNull(router.find("GET", "/staticfile"));
+    }
+
+    @Test
+    void ignoresCaseEmptySegmentsAndQueryString() throws Exception {
+        Route route = get("/Orders/{id}/Items");
+        Router router = router(route);
+        assertSame(route, router.find("GET", "/orders/1/items"));
+        assertSame(route, router.find("GET", "//ORDERS//1/items/?page=2"));
+        assertSame(route, router.find("get", "/orders/1/items#top"));
+    }
+
+    @Test
+    void nonAsciiSegmentsFoldConsistently() throws Exception {
+        Route istanbul = get("/İstanbul");
+        Route red = get("/kırmızı");
+        Route sharp = get("/straße");
+        Router router = router(istanbul, red, sharp);
+        assertSame(istanbul, router.find("GET", "/İstanbul"));
+        assertSame(istanbul, router.find("GET", "/istanbul"));
+        assertSame(red, router.find("GET", "/kırmızı"));
+        assertSame(red, router.find("GET", "/KIRMIZI"));
+        assertSame(sharp, router.find("GET", "/STRAßE"));
+    }
+
+    @Test
+    void distinguishesNotFoundFromMethodNotAllowed() throws Exception {
+        Router router = router(get("/users/{id}"), route("POST", "/users", true));
+        assertThrows(IllegalMethodNotAllowedException.class, () -> router.match("DELETE", "/users/1"));
+        assertThrows(IllegalPathNotFoundException.class, () -> router.match("GET", "/orders"));
+        assertNotNull(router.match("POST", "/users"));
+    }
+
+    @Test
+    void rejectsDuplicatedRoutes() throws Exception {
+        Router router = new Router();
+        router.add(get("/users/{id}"));
+        router.add(route("POST", "/users/{id}", true));
+        assertThrows(IllegalPathDuplicatedException.class, () -> router.add(get("/USERS/{name}")));
+    }
+}
@@ -0,0 +1,178 @@
+package io.san.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.san.server.EmbeddedServer.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式上传的背压(暂停读取)以及执行器拒绝时的 onAbort
+ */
+class StreamingUploadTest {
+    private static final String HEAD = "POST /upload HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Transfer-Encoding: chunked\r\n"
+            + "\r\n";
+    private static final String CHUNK = "5\r\nhello\r\n";
+    private static final String LAST = "0\r\n\r\n";
+
+    private static final AtomicLong received = new AtomicLong();
+    private static final List<Throwable> aborts = Collections.synchronizedList(new ArrayList<>());
+
+    @RestApi(path = "/upload", method = "POST", executor = "upload")
+    public static class Upload implements StreamingMappingHandler<Long> {
+        @Override
+        public void onContent(NettyHttpRequest request, ByteBuf chunk) {
+            received.addAndGet(chunk.readableBytes());
+        }
+
+        @Override
+        public void onAbort(NettyHttpRequest request, Throwable cause) {
+            aborts.add(cause);
+        }
+
+        @Override
+        public Long handle(NettyHttpRequest request) {
+            return received.get();
+        }
+    }
+
+    @RestApi(path = "/manual/{n}", executor = "manual")
+    public static class Manual implements MappingHandler<String> {
+        @Override
+        public String handle(NettyHttpRequest request) {
+            return request.getStringPathValue("n");
+        }
+    }
+
+    private final ManualExecutor upload = new ManualExecutor();
+    private final ManualExecutor manual = new ManualExecutor();
+    private EmbeddedServer server;
+
+    @BeforeEach
+    void start() {
+        received.set(0);
+        aborts.clear();
+        this.server = EmbeddedServer.start(HttpServer.builder().pipeliningDepth(1)
+                .executor("upload", this.upload).executor("manual", this.manual), Upload.class, Manual.class);
+    }
+
+    @AfterEach
+    void stop() {
+        this.server.close();
+    }
+
+    private static void sendChunks(EmbeddedChannel channel, int count) {
+        for (int i = 0; i < count; i++) {
+            send(channel, CHUNK);
+        }
+    }
+
+    @Test
+    void pausesReadingWhileChunksArePending() {
+        EmbeddedChannel channel = this.server.connect();
+        send(channel, HEAD);
+        sendChunks(channel, 3);
+        assertTrue(channel.config().isAutoRead());
+        sendChunks(channel, 1);
+        assertFalse(channel.config().isAutoRead());
+
+        this.upload.runAll();
+        assertTrue(channel.config().isAutoRead());
+        send(channel, LAST);
+        this.upload.runAll();
+
+        List<FullHttpResponse> responses = responses(channel);
+        assertEquals(1, responses.size());
+        assertEquals(HttpResponseStatus.OK, responses.get(0).status());
+        assertEquals("20", body(responses.get(0)));
+        assertTrue(aborts.isEmpty());
+        release(responses);
+    }
+
+    @Test
+    void drainedUploadKeepsPipeliningPause() {
+        EmbeddedChannel channel = this.server.connect();
+        // 超过 pipelining 深度, 第二个请求排队并暂停读取
+        send(channel, get("/manual/1"), get("/manual/2"));
+        assertFalse(channel.config().isAutoRead());
+        send(channel, HEAD);
+        sendChunks(channel, 4);
+
+        this.upload.runAll();
+        assertFalse(channel.config().isAutoRead(), "upload must not lift the pipelining pause");
+
+        // 上传占着在途名额, 它结束后排队的请求才分发, 全部响应后恢复读取
+        send(channel, LAST);
+        this.upload.runAll();
+        channel.runPendingTasks();
+        this.manual.runAll();
+        channel.runPendingTasks();
+        this.manual.runAll();
+        assertTrue(channel.config().isAutoRead());
+
+        List<FullHttpResponse> responses = responses(channel);
+        assertEquals(3, responses.size());
+        assertTrue(body(responses.get(0)).contains("1"));
+        assertTrue(body(responses.get(1)).contains("2"));
+        assertEquals("20", body(responses.get(2)));
+        release(responses);
+    }
+
+    @Test
+    void lastRequestUploadReadsItsBodyBeforeClosing() {
+        EmbeddedChannel channel = this.server.connect();
+        // 没有 Connection: keep-alive, 是连接上的最后一个请求; body 读完前不能暂停读取
+        send(channel, HEAD.replace("Connection: keep-alive\r\n", ""));
+        sendChunks(channel, 1);
+        assertTrue(channel.config().isAutoRead());
+        send(channel, LAST);
+        assertFalse(channel.config().isAutoRead());
+        // 之后的请求直接丢弃
+        send(channel, get("/manual/1"));
+        assertEquals(0, this.manual.size());
+
+        this.upload.runAll();
+        List<FullHttpResponse> responses = responses(channel);
+        assertEquals(1, responses.size());
+        assertEquals("5", body(responses.get(0)));
+        assertFalse(channel.isActive());
+        release(responses);
+    }
+
+    @Test
+    void rejectionAfterStartAborts() {
+        EmbeddedChannel channel = this.server.connect();
+        send(channel, HEAD);
+        this.upload.runAll();
+
+        this.upload.rejecting(true);
+        sendChunks(channel, 1);
+        // 执行器仍然拒绝, onAbort 在 event loop 上执行
+        assertEquals(1, aborts.size());
+        assertTrue(aborts.get(0) instanceof RejectedExecutionException);
+        assertTrue(channel.config().isAutoRead());
+
+        sendChunks(channel, 1);
+        send(channel, LAST);
+        List<FullHttpResponse> responses = responses(channel);
+        assertEquals(1, responses.size());
+        assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, responses.get(0).status());
+        assertEquals(1, aborts.size());
+        assertEquals(0, received.get());
+        release(responses);
+    }
+}